@@ -0,0 +1,182 @@
+package io.github.de314.ac.data.api.key;
+
+import com.google.common.collect.ImmutableList;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A tuple of strings, longs, timestamps and UUIDs with an order preserving binary encoding, e.g.
+ * {@code CompositeKey.of("tenant-1", 42L, Instant.now())}.
+ *
+ * Encoded keys sort component by component: strings by code point, longs and timestamps numerically, UUIDs by their
+ * canonical text form. A key is a byte prefix of every longer key that starts with the same components, so the
+ * encoding of a partial key can be used as the prefix of a scan.
+ */
+@Value
+public class CompositeKey implements Comparable<CompositeKey> {
+
+    public static final KeyCodec<CompositeKey> CODEC = new KeyCodec<CompositeKey>() {
+        @Override
+        public byte[] encode(CompositeKey key) {
+            return key.encode();
+        }
+
+        @Override
+        public CompositeKey decode(byte[] bytes) {
+            return CompositeKey.decode(bytes);
+        }
+    };
+
+    private static final byte STRING = 0x02;
+    private static final byte LONG = 0x03;
+    private static final byte TIMESTAMP = 0x04;
+    private static final byte UUID_TYPE = 0x05;
+
+    private static final byte ESCAPE = 0x00;
+    private static final byte ESCAPED_NUL = (byte) 0xFF;
+    private static final byte STRING_END = 0x01;
+
+    private final List<Object> components;
+
+    private CompositeKey(List<Object> components) {
+        this.components = components;
+    }
+
+    public int size() {
+        return components.size();
+    }
+
+    public String getString(int index) {
+        return (String) components.get(index);
+    }
+
+    public long getLong(int index) {
+        return (Long) components.get(index);
+    }
+
+    public Instant getTimestamp(int index) {
+        return (Instant) components.get(index);
+    }
+
+    public UUID getUuid(int index) {
+        return (UUID) components.get(index);
+    }
+
+    /**
+     * @return a new key with {@code component} appended.
+     */
+    public CompositeKey with(@NonNull Object component) {
+        return new CompositeKey(ImmutableList.builder().addAll(components).add(checkType(component)).build());
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * components.size());
+        for (Object component : components) {
+            if (component instanceof String) {
+                out.write(STRING);
+                // NUL is escaped as 00 FF and the terminator 00 01 sorts before it, so shorter strings come first
+                // and a string is never a byte prefix of a longer one
+                for (byte b : ((String) component).getBytes(StandardCharsets.UTF_8)) {
+                    out.write(b);
+                    if (b == ESCAPE) {
+                        out.write(ESCAPED_NUL);
+                    }
+                }
+                out.write(ESCAPE);
+                out.write(STRING_END);
+            } else if (component instanceof Long) {
+                out.write(LONG);
+                writeLong(out, (Long) component ^ Long.MIN_VALUE);
+            } else if (component instanceof Instant) {
+                Instant timestamp = (Instant) component;
+                out.write(TIMESTAMP);
+                writeLong(out, timestamp.getEpochSecond() ^ Long.MIN_VALUE);
+                writeInt(out, timestamp.getNano());
+            } else {
+                UUID uuid = (UUID) component;
+                out.write(UUID_TYPE);
+                writeLong(out, uuid.getMostSignificantBits());
+                writeLong(out, uuid.getLeastSignificantBits());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public int compareTo(CompositeKey other) {
+        return Arrays.compareUnsigned(encode(), other.encode());
+    }
+
+    public static CompositeKey of(Object... components) {
+        ImmutableList.Builder<Object> builder = ImmutableList.builder();
+        for (Object component : components) {
+            builder.add(checkType(component));
+        }
+        return new CompositeKey(builder.build());
+    }
+
+    public static CompositeKey decode(@NonNull byte[] bytes) {
+        ImmutableList.Builder<Object> components = ImmutableList.builder();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            byte type = buffer.get();
+            switch (type) {
+                case STRING:
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    while (true) {
+                        byte b = buffer.get();
+                        if (b == ESCAPE && buffer.get() == STRING_END) {
+                            break;
+                        }
+                        out.write(b);
+                    }
+                    components.add(new String(out.toByteArray(), StandardCharsets.UTF_8));
+                    break;
+                case LONG:
+                    components.add(buffer.getLong() ^ Long.MIN_VALUE);
+                    break;
+                case TIMESTAMP:
+                    long seconds = buffer.getLong() ^ Long.MIN_VALUE;
+                    components.add(Instant.ofEpochSecond(seconds, buffer.getInt()));
+                    break;
+                case UUID_TYPE:
+                    components.add(new UUID(buffer.getLong(), buffer.getLong()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown composite key component type: " + type);
+            }
+        }
+        return new CompositeKey(components.build());
+    }
+
+    private static Object checkType(Object component) {
+        if (component instanceof Integer) {
+            return ((Integer) component).longValue();
+        }
+        if (!(component instanceof String || component instanceof Long
+                || component instanceof Instant || component instanceof UUID)) {
+            throw new IllegalArgumentException("Unsupported composite key component: " + component);
+        }
+        return component;
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(value >>> shift);
+        }
+    }
+}
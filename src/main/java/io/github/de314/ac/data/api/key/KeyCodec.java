@@ -0,0 +1,13 @@
+package io.github.de314.ac.data.api.key;
+
+/**
+ * Converts keys to the bytes they are stored under. Codecs are order preserving: comparing two encoded keys as
+ * unsigned bytes gives the same order as comparing the keys themselves, so range scans over the encoded form visit
+ * keys in key order.
+ */
+public interface KeyCodec<K> {
+
+    byte[] encode(K key);
+
+    K decode(byte[] bytes);
+}
@@ -0,0 +1,80 @@
+package io.github.de314.ac.data.api.key;
+
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+
+/**
+ * Standard {@link KeyCodec}s and the string order matching them.
+ */
+public final class KeyCodecs {
+
+    /**
+     * Orders strings by code point, which is the unsigned byte order of their UTF-8 encoding and therefore the order
+     * of string keys on disk. {@link String#compareTo} compares UTF-16 units instead and disagrees for characters
+     * above U+FFFF.
+     */
+    public static final Comparator<String> UTF8_ORDER = KeyCodecs::compareUtf8;
+
+    private static final KeyCodec<String> UTF8 = new KeyCodec<String>() {
+        @Override
+        public byte[] encode(String key) {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private KeyCodecs() {
+    }
+
+    public static KeyCodec<String> utf8() {
+        return UTF8;
+    }
+
+    public static KeyCodec<CompositeKey> composite() {
+        return CompositeKey.CODEC;
+    }
+
+    public static int compareUtf8(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                if (ca >= Character.MIN_SURROGATE && cb >= Character.MIN_SURROGATE) {
+                    // move surrogates above the rest of the BMP so that supplementary characters sort last
+                    ca = fixupSurrogate(ca);
+                    cb = fixupSurrogate(cb);
+                }
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * @return the smallest string greater than every string starting with {@code prefix} in {@link #UTF8_ORDER}, or
+     * {@code null} if there is none.
+     */
+    public static String prefixEnd(@NonNull String prefix) {
+        int end = prefix.length();
+        while (end > 0) {
+            int codePoint = prefix.codePointBefore(end);
+            end -= Character.charCount(codePoint);
+            if (codePoint < Character.MAX_CODE_POINT) {
+                int next = codePoint + 1 == Character.MIN_SURROGATE ? Character.MAX_SURROGATE + 1 : codePoint + 1;
+                return new StringBuilder(prefix.substring(0, end)).appendCodePoint(next).toString();
+            }
+        }
+        return null;
+    }
+
+    private static char fixupSurrogate(char c) {
+        return (char) (c >= 0xE000 ? c - 0x800 : c + 0x2000);
+    }
+}
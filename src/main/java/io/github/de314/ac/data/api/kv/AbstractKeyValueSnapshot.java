@@ -0,0 +1,57 @@
+package io.github.de314.ac.data.api.kv;
+
+import io.github.de314.ac.data.api.model.CursorPage;
+import io.github.de314.ac.data.api.model.DataRow;
+import io.github.de314.ac.data.api.model.ScanOptions;
+import lombok.Getter;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot registered with the {@link SnapshotRegistry} of its store. Scans go through the store with the snapshot
+ * id set, so a cursor page and the snapshot itself read the same way.
+ */
+public abstract class AbstractKeyValueSnapshot<V> implements KeyValueSnapshot<V> {
+
+    @Getter
+    private final String id;
+    private final KeyValueStore<V> store;
+    private final AtomicBoolean closed;
+
+    protected AbstractKeyValueSnapshot(KeyValueStore<V> store) {
+        this(UUID.randomUUID().toString(), store);
+    }
+
+    /**
+     * @param id the id of the underlying snapshot when {@code store} wraps the store that took it.
+     */
+    protected AbstractKeyValueSnapshot(String id, KeyValueStore<V> store) {
+        this.id = id;
+        this.store = store;
+        this.closed = new AtomicBoolean();
+    }
+
+    @Override
+    public Stream<DataRow<V>> stream(ScanOptions options) {
+        return store.stream(options.toBuilder().snapshot(id).build());
+    }
+
+    @Override
+    public CursorPage<V> scan(ScanOptions options) {
+        return store.scan(options.toBuilder().snapshot(id).build());
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    /**
+     * Free the resources of the snapshot, called once.
+     */
+    protected abstract void release();
+}
@@ -3,35 +3,89 @@ package io.github.de314.ac.data.api.kv;
 import io.github.de314.ac.data.api.model.CursorPage;
 import io.github.de314.ac.data.api.model.DataRow;
 import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import lombok.NonNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class AbstractKeyValueStore<V> implements KeyValueStore<V> {
 
+    @Override
+    public long estimateCount() {
+        return count();
+    }
+
     @Override
     public long count(ScanOptions options) {
-        return stream(options.toBuilder().keysOnly(true).build()).collect(Collectors.counting());
+        try (Stream<DataRow<V>> rows = stream(options.toBuilder().keysOnly(true).build())) {
+            return rows.count();
+        }
+    }
+
+    @Override
+    public Optional<DataRow<V>> getRow(@NonNull String key) {
+        return get(key).map(value -> DataRow.of(key, value));
+    }
+
+    @Override
+    public List<DataRow<V>> getAll(@NonNull Collection<String> keys) {
+        List<DataRow<V>> rows = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            getRow(key).ifPresent(rows::add);
+        }
+        return rows;
     }
 
     @Override
     public CursorPage<V> scan(ScanOptions options) {
+        return scan(this, options);
+    }
+
+    /**
+     * Cursor pagination over {@link KeyValueStore#stream(ScanOptions)}: reads one row past the page, which becomes
+     * the start of the next page, or its end when the scan is reversed.
+     */
+    public static <T> CursorPage<T> scan(KeyValueStore<T> store, ScanOptions options) {
         long cursorLimit = options.getLimit(100L) + 1;
-        List<DataRow<V>> content = stream(options.toBuilder().limit(cursorLimit).build())
-                .collect(Collectors.toList());
+        List<DataRow<T>> content;
+        try (Stream<DataRow<T>> rows = store.stream(options.toBuilder().limit(cursorLimit).build())) {
+            content = rows.collect(Collectors.toList());
+        }
 
         ScanOptions next = null;
         if (content.size() == cursorLimit) {
-            DataRow<V> lastRecord = content.get(content.size() - 1);
-            next = options.toBuilder()
-                    .startKey(lastRecord.getKey())
-                    .build();
+            DataRow<T> lastRecord = content.get(content.size() - 1);
+            next = options.getReverse(false)
+                    ? options.toBuilder().endKey(lastRecord.getKey()).build()
+                    : options.toBuilder().startKey(lastRecord.getKey()).build();
             content = content.subList(0, content.size() - 1);
         }
 
         return new CursorPage<>(content, next);
     }
 
+    @Override
+    public void putAll(@NonNull Map<String, V> values) {
+        write(WriteBatch.of(values));
+    }
+
+    @Override
+    public void write(@NonNull WriteBatch<V> batch) {
+        for (WriteBatch.Operation<V> op : batch.getOperations()) {
+            if (op.isDelete()) {
+                delete(op.getKey());
+            } else {
+                put(op.getKey(), op.getValue());
+            }
+        }
+    }
+
     @Override
     public long delete(ScanOptions options) {
         long count = 0L;
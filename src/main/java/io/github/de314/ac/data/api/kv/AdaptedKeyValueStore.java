@@ -4,17 +4,30 @@ import com.fasterxml.jackson.databind.JsonNode;
 import io.github.de314.ac.data.api.model.CursorPage;
 import io.github.de314.ac.data.api.model.DataRow;
 import io.github.de314.ac.data.api.model.KVInfo;
+import io.github.de314.ac.data.api.model.LazyDataRow;
+import io.github.de314.ac.data.api.model.ScanFilter;
 import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.api.model.ValueCodec;
+import io.github.de314.ac.data.api.model.WriteBatch;
 import io.github.de314.ac.data.api.service.DataAdapter;
+import com.google.common.collect.Lists;
 import lombok.AllArgsConstructor;
 import lombok.NonNull;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @AllArgsConstructor
 public class AdaptedKeyValueStore<A, B> implements KeyValueStore<A> {
 
+    private static final int DELETE_BATCH_SIZE = 1_000;
+
     private final KeyValueStore<B> delegate;
     private final DataAdapter<A, B> dataAdapter;
 
@@ -28,8 +41,18 @@ public class AdaptedKeyValueStore<A, B> implements KeyValueStore<A> {
         return delegate.count();
     }
 
+    @Override
+    public long estimateCount() {
+        return delegate.estimateCount();
+    }
+
     @Override
     public long count(ScanOptions options) {
+        if (options.hasFilter()) {
+            try (Stream<DataRow<A>> rows = stream(options.toBuilder().keysOnly(true).build())) {
+                return rows.count();
+            }
+        }
         return delegate.count(options);
     }
 
@@ -38,16 +61,74 @@ public class AdaptedKeyValueStore<A, B> implements KeyValueStore<A> {
         return delegate.get(key).map(dataAdapter.getBaFunc());
     }
 
+    @Override
+    public Optional<DataRow<A>> getRow(@NonNull String key) {
+        return delegate.getRow(key).map(
+                row -> DataRow.of(key, dataAdapter.ba(row.getValue()), row.getVersion(), row.getExpiresAt())
+        );
+    }
+
+    @Override
+    public List<DataRow<A>> getAll(@NonNull Collection<String> keys) {
+        return delegate.getAll(keys).stream()
+                .map(row -> DataRow.of(row.getKey(), dataAdapter.ba(row.getValue()), row.getVersion(), row.getExpiresAt()))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public CursorPage<A> scan(ScanOptions options) {
-        return delegate.scan(options).map(dataAdapter.getBaFunc());
+        if (options.hasFilter()) {
+            return AbstractKeyValueStore.scan(this, options);
+        }
+        return delegate.scan(options).mapLazily(dataAdapter.getBaFunc(options.getProjection()));
     }
 
+    /**
+     * The {@link ScanOptions#getFilter() filter} applies to decoded values, so filtered scans read every row of the
+     * range from the delegate and apply the filter and then the limit here. A filter of JSON fields only is tested on
+     * those fields read from the stored value, so rows it rejects are never decoded.
+     */
     @Override
     public Stream<DataRow<A>> stream(ScanOptions options) {
-        return delegate.stream(options).map(
-                row -> DataRow.of(row.getKey(), dataAdapter.ba(row.getValue()))
-        );
+        Function<B, A> decoder = dataAdapter.getBaFunc(options.getProjection());
+        if (!options.hasFilter()) {
+            return delegate.stream(options).map(
+                    row -> LazyDataRow.of(row.getKey(), row.getValue(), row.getVersion(), decoder)
+            );
+        }
+        boolean keysOnly = options.getKeysOnly(false);
+        ScanFilter filter = options.getFilter();
+        Function<B, JsonNode> fields = filter.getFields() != null ? dataAdapter.getFieldsFunc(filter.getFields()) : null;
+        ScanOptions delegateOptions = options.toBuilder()
+                .filter(null)
+                .limit(null)
+                .keysOnly(false)
+                .build();
+        Stream<DataRow<B>> rows = delegate.stream(delegateOptions);
+        if (fields != null) {
+            rows = rows.filter(row -> filter.testFields(fields.apply(row.getValue())));
+        }
+        return rows
+                .map(row -> (DataRow<A>) LazyDataRow.of(row.getKey(), row.getValue(), row.getVersion(), decoder))
+                .filter(row -> fields != null || filter.test(row.getValue()))
+                .limit(options.getLimit(Long.MAX_VALUE))
+                .map(row -> keysOnly ? DataRow.<A>of(row.getKey(), null, row.getVersion()) : row);
+    }
+
+    @Override
+    public KeyValueSnapshot<A> snapshot(@NonNull Duration lease) {
+        KeyValueSnapshot<B> snapshot = delegate.snapshot(lease);
+        return new AbstractKeyValueSnapshot<A>(snapshot.getId(), this) {
+            @Override
+            public Optional<A> get(@NonNull String key) {
+                return snapshot.get(key).map(dataAdapter.getBaFunc());
+            }
+
+            @Override
+            protected void release() {
+                snapshot.close();
+            }
+        };
     }
 
     @Override
@@ -55,14 +136,76 @@ public class AdaptedKeyValueStore<A, B> implements KeyValueStore<A> {
         delegate.put(key, dataAdapter.ab(value));
     }
 
+    @Override
+    public void put(@NonNull String key, A value, @NonNull Duration ttl) {
+        delegate.put(key, dataAdapter.ab(value), ttl);
+    }
+
+    @Override
+    public boolean putIfVersion(@NonNull String key, long expectedVersion, A value) {
+        return delegate.putIfVersion(key, expectedVersion, dataAdapter.ab(value));
+    }
+
+    @Override
+    public void putAll(@NonNull Map<String, A> values) {
+        write(WriteBatch.of(values));
+    }
+
+    @Override
+    public void write(@NonNull WriteBatch<A> batch) {
+        delegate.write(batch.map(dataAdapter.getAbFunc()));
+    }
+
+    @Override
+    public void patch(@NonNull String key, @NonNull JsonNode patch) {
+        delegate.patch(key, patch);
+    }
+
+    @Override
+    public void increment(@NonNull String key, long delta) {
+        delegate.increment(key, delta);
+    }
+
+    @Override
+    public long getCounter(@NonNull String key) {
+        return delegate.getCounter(key);
+    }
+
+    @Override
+    public void merge(@NonNull String key, @NonNull String operand) {
+        delegate.merge(key, operand);
+    }
+
+    @Override
+    public Optional<String> getMerged(@NonNull String key) {
+        return delegate.getMerged(key);
+    }
+
     @Override
     public boolean delete(@NonNull String key) {
         return delegate.delete(key);
     }
 
+    @Override
+    public boolean compareAndDelete(@NonNull String key, long expectedVersion) {
+        return delegate.compareAndDelete(key, expectedVersion);
+    }
+
     @Override
     public long delete(ScanOptions options) {
-        return delegate.delete(options);
+        if (!options.hasFilter()) {
+            return delegate.delete(options);
+        }
+        List<String> keys;
+        try (Stream<DataRow<A>> rows = stream(options.toBuilder().keysOnly(true).build())) {
+            keys = rows.map(DataRow::getKey).collect(Collectors.toList());
+        }
+        for (List<String> chunk : Lists.partition(keys, DELETE_BATCH_SIZE)) {
+            WriteBatch<B> batch = WriteBatch.create();
+            chunk.forEach(batch::delete);
+            delegate.write(batch);
+        }
+        return keys.size();
     }
 
     @Override
@@ -78,10 +221,18 @@ public class AdaptedKeyValueStore<A, B> implements KeyValueStore<A> {
         return create(delegate, DataAdapter.jsonByteAdapter());
     }
 
+    public static KeyValueStore<JsonNode> createJsonStore(KeyValueStore<byte[]> delegate, ValueCodec codec) {
+        return create(delegate, DataAdapter.jsonByteAdapter(codec));
+    }
+
     public static <T> KeyValueStore<T> createPojoStore(KeyValueStore<byte[]> delegate, Class<T> target) {
         return create(delegate, DataAdapter.pojoByteConverter(target));
     }
 
+    public static <T> KeyValueStore<T> createPojoStore(KeyValueStore<byte[]> delegate, Class<T> target, ValueCodec codec) {
+        return create(delegate, DataAdapter.pojoByteConverter(target, codec));
+    }
+
     public static <X, Y> KeyValueStore<X> create(KeyValueStore<Y> delegate, DataAdapter<X, Y> dataAdapter) {
         return new AdaptedKeyValueStore<>(delegate, dataAdapter);
     }
@@ -0,0 +1,54 @@
+package io.github.de314.ac.data.api.kv;
+
+import io.github.de314.ac.data.api.key.KeyCodec;
+import io.github.de314.ac.data.api.model.BinaryDataRow;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Store addressed by raw key bytes, typically produced by a {@link KeyCodec}. Ranges are compared as unsigned bytes
+ * and scans hand out the stored key bytes without decoding them.
+ */
+public interface BinaryKeyValueStore<V> {
+
+    Optional<V> get(@NonNull byte[] key);
+
+    void put(@NonNull byte[] key, V value);
+
+    boolean delete(@NonNull byte[] key);
+
+    /**
+     * @param beginKey inclusive lower bound, {@code null} for the first key.
+     * @param endKey exclusive upper bound, {@code null} for no bound.
+     */
+    Stream<BinaryDataRow<V>> stream(byte[] beginKey, byte[] endKey, long limit, boolean keysOnly);
+
+    /**
+     * Stream every key starting with {@code prefix}.
+     */
+    default Stream<BinaryDataRow<V>> streamPrefix(@NonNull byte[] prefix, long limit, boolean keysOnly) {
+        return stream(prefix, prefixEnd(prefix), limit, keysOnly);
+    }
+
+    /**
+     * Delete the keys in {@code [beginKey, endKey)}.
+     */
+    long delete(byte[] beginKey, byte[] endKey);
+
+    /**
+     * @return the smallest key greater than every key starting with {@code prefix}, {@code null} if there is none.
+     */
+    static byte[] prefixEnd(@NonNull byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xFF) {
+                byte[] end = Arrays.copyOf(prefix, i + 1);
+                end[i]++;
+                return end;
+            }
+        }
+        return null;
+    }
+}
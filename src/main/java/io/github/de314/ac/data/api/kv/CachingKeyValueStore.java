@@ -0,0 +1,304 @@
+package io.github.de314.ac.data.api.kv;
+
+import io.github.de314.ac.data.api.model.CacheOptions;
+import io.github.de314.ac.data.api.model.CursorPage;
+import io.github.de314.ac.data.api.model.DataRow;
+import io.github.de314.ac.data.api.model.KVInfo;
+import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps decoded values of point reads on the heap in front of another store. Writes and deletes go to the delegate
+ * and then invalidate the affected keys; scans always read the delegate. Values are loaded as rows, whose
+ * {@link DataRow#getExpiresAt() expiry} is cached with them, so keys with a ttl are not served once it passed.
+ *
+ * Cached values are shared between callers and must not be mutated.
+ */
+public class CachingKeyValueStore<V> implements KeyValueStore<V> {
+
+    private final KeyValueStore<V> delegate;
+    private final CacheOptions options;
+    private final Cache<String, Expiring<V>> cache;
+    /**
+     * Bumped by every write. A read only keeps the value it loaded if no write happened meanwhile, otherwise a load
+     * racing with a write could cache the overwritten value.
+     */
+    private final AtomicLong writeStamp = new AtomicLong();
+
+    public CachingKeyValueStore(@NonNull KeyValueStore<V> delegate, @NonNull CacheOptions options) {
+        this.delegate = delegate;
+        this.options = options;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(options.getMaxEntries())
+                .recordStats();
+        if (options.getExpireAfterWrite() != null) {
+            builder.expireAfterWrite(options.getExpireAfterWrite().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        this.cache = builder.build();
+    }
+
+    @Override
+    public KVInfo getInfo() {
+        CacheStats stats = cache.stats();
+        return delegate.getInfo().toBuilder()
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .evictionCount(stats.evictionCount())
+                .build();
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public long estimateCount() {
+        return delegate.estimateCount();
+    }
+
+    @Override
+    public long count(ScanOptions options) {
+        return delegate.count(options);
+    }
+
+    @Override
+    public Optional<V> get(@NonNull String key) {
+        Expiring<V> cached = live(key, cache.getIfPresent(key), System.currentTimeMillis());
+        if (cached != null) {
+            return cached.getValue();
+        }
+        long stamp = writeStamp.get();
+        Optional<DataRow<V>> row = delegate.getRow(key);
+        cache(key, row, stamp);
+        return row.map(DataRow::getValue);
+    }
+
+    /**
+     * Cached values carry no version, so rows are always read from the delegate.
+     */
+    @Override
+    public Optional<DataRow<V>> getRow(@NonNull String key) {
+        return delegate.getRow(key);
+    }
+
+    @Override
+    public List<DataRow<V>> getAll(@NonNull Collection<String> keys) {
+        long now = System.currentTimeMillis();
+        Map<String, Expiring<V>> found = Maps.newHashMap();
+        cache.getAllPresent(keys).forEach((key, entry) -> {
+            Expiring<V> live = live(key, entry, now);
+            if (live != null) {
+                found.put(key, live);
+            }
+        });
+        List<String> missing = keys.stream()
+                .filter(key -> !found.containsKey(key))
+                .distinct()
+                .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            long stamp = writeStamp.get();
+            Map<String, DataRow<V>> loaded = Maps.newHashMap();
+            for (DataRow<V> row : delegate.getAll(missing)) {
+                loaded.put(row.getKey(), row);
+            }
+            for (String key : missing) {
+                Optional<DataRow<V>> row = Optional.ofNullable(loaded.get(key));
+                cache(key, row, stamp);
+                found.put(key, Expiring.of(row));
+            }
+        }
+        List<DataRow<V>> rows = Lists.newArrayListWithCapacity(keys.size());
+        for (String key : keys) {
+            Expiring<V> entry = found.get(key);
+            entry.getValue().ifPresent(
+                    value -> rows.add(DataRow.of(key, value, DataRow.NO_VERSION, entry.getExpiresAt()))
+            );
+        }
+        return rows;
+    }
+
+    @Override
+    public CursorPage<V> scan(ScanOptions options) {
+        return delegate.scan(options);
+    }
+
+    @Override
+    public Stream<DataRow<V>> stream(ScanOptions options) {
+        return delegate.stream(options);
+    }
+
+    /**
+     * Snapshots read the delegate directly, the cache only holds current values.
+     */
+    @Override
+    public KeyValueSnapshot<V> snapshot(@NonNull Duration lease) {
+        return delegate.snapshot(lease);
+    }
+
+    @Override
+    public void put(@NonNull String key, V value) {
+        delegate.put(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void put(@NonNull String key, V value, @NonNull Duration ttl) {
+        delegate.put(key, value, ttl);
+        invalidate(key);
+    }
+
+    @Override
+    public boolean putIfVersion(@NonNull String key, long expectedVersion, V value) {
+        boolean written = delegate.putIfVersion(key, expectedVersion, value);
+        if (written) {
+            invalidate(key);
+        }
+        return written;
+    }
+
+    @Override
+    public void putAll(@NonNull Map<String, V> values) {
+        write(WriteBatch.of(values));
+    }
+
+    @Override
+    public void write(@NonNull WriteBatch<V> batch) {
+        delegate.write(batch);
+        writeStamp.incrementAndGet();
+        batch.getOperations().forEach(op -> cache.invalidate(op.getKey()));
+    }
+
+    @Override
+    public void patch(@NonNull String key, @NonNull JsonNode patch) {
+        delegate.patch(key, patch);
+        invalidate(key);
+    }
+
+    /**
+     * Counters and merged values are not cached.
+     */
+    @Override
+    public void increment(@NonNull String key, long delta) {
+        delegate.increment(key, delta);
+    }
+
+    @Override
+    public long getCounter(@NonNull String key) {
+        return delegate.getCounter(key);
+    }
+
+    @Override
+    public void merge(@NonNull String key, @NonNull String operand) {
+        delegate.merge(key, operand);
+    }
+
+    @Override
+    public Optional<String> getMerged(@NonNull String key) {
+        return delegate.getMerged(key);
+    }
+
+    @Override
+    public boolean delete(@NonNull String key) {
+        boolean deleted = delegate.delete(key);
+        invalidate(key);
+        return deleted;
+    }
+
+    @Override
+    public boolean compareAndDelete(@NonNull String key, long expectedVersion) {
+        boolean deleted = delegate.compareAndDelete(key, expectedVersion);
+        if (deleted) {
+            invalidate(key);
+        }
+        return deleted;
+    }
+
+    @Override
+    public long delete(ScanOptions options) {
+        long deleted = delegate.delete(options);
+        writeStamp.incrementAndGet();
+        cache.asMap().keySet().removeIf(options::keyInRange);
+        return deleted;
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+        delegate.close();
+    }
+
+    public KeyValueStore<V> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Cache a row read from the delegate with its expiry, unless the key was written since the read started.
+     */
+    private void cache(String key, Optional<DataRow<V>> row, long stamp) {
+        if (!row.isPresent() && !options.isCacheMisses()) {
+            return;
+        }
+        Expiring<V> entry = Expiring.of(row);
+        if (cache.asMap().putIfAbsent(key, entry) == null && writeStamp.get() != stamp) {
+            cache.asMap().remove(key, entry);
+        }
+    }
+
+    /**
+     * @return {@code entry} unless the ttl of its key has passed, in which case it is dropped from the cache.
+     */
+    private Expiring<V> live(String key, Expiring<V> entry, long now) {
+        if (entry != null && entry.getExpiresAt() <= now) {
+            cache.asMap().remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private void invalidate(String key) {
+        writeStamp.incrementAndGet();
+        cache.invalidate(key);
+    }
+
+    /**
+     * A cached read and the time its key expires at. Compared by identity, so only the entry that was read is removed.
+     */
+    @Getter
+    @AllArgsConstructor
+    private static class Expiring<V> {
+        private final Optional<V> value;
+        /** Epoch millis, {@link DataRow#NEVER_EXPIRES} for keys without a ttl and for misses. */
+        private final long expiresAt;
+
+        private static <V> Expiring<V> of(Optional<DataRow<V>> row) {
+            return new Expiring<>(
+                    row.map(DataRow::getValue),
+                    row.map(DataRow::getExpiresAt).orElse(DataRow.NEVER_EXPIRES)
+            );
+        }
+    }
+
+    public static <T> KeyValueStore<T> create(KeyValueStore<T> delegate, CacheOptions options) {
+        return new CachingKeyValueStore<>(delegate, options);
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.de314.ac.data.api.kv;
+
+import io.github.de314.ac.data.api.model.CursorPage;
+import io.github.de314.ac.data.api.model.DataRow;
+import io.github.de314.ac.data.api.model.ScanOptions;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Point in time view of a store: reads see every write made before the snapshot was taken and none made after. A
+ * snapshot is held until it is closed or until its lease passes without it being read while no stream of it is open.
+ *
+ * Pages of {@link #scan(ScanOptions)} carry the snapshot id in {@link CursorPage#getNext()} and
+ * {@link CursorPage#getToken()}, so the store can resume them with {@link KeyValueStore#scan(ScanOptions)} while the
+ * snapshot is held.
+ */
+public interface KeyValueSnapshot<V> extends AutoCloseable {
+
+    Duration DEFAULT_LEASE = Duration.ofMinutes(5);
+
+    String getId();
+
+    Optional<V> get(@NonNull String key);
+
+    /**
+     * Like {@link KeyValueStore#stream(ScanOptions)}. Close the stream before the snapshot.
+     */
+    Stream<DataRow<V>> stream(ScanOptions options);
+
+    CursorPage<V> scan(ScanOptions options);
+
+    /**
+     * Release the snapshot. Closing it again has no effect.
+     */
+    @Override
+    void close();
+}
@@ -4,29 +4,137 @@ import io.github.de314.ac.data.api.model.CursorPage;
 import io.github.de314.ac.data.api.model.DataRow;
 import io.github.de314.ac.data.api.model.KVInfo;
 import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.NonNull;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
 public interface KeyValueStore<V> {
 
+    char MERGE_DELIMITER = ',';
+
     KVInfo getInfo();
 
     long count();
 
+    /**
+     * Cheap, possibly approximate, number of keys in the store.
+     */
+    long estimateCount();
+
     long count(ScanOptions options);
 
     Optional<V> get(@NonNull String key);
 
+    /**
+     * @return the value of {@code key} with its {@link DataRow#getVersion() version}, to be written back with
+     * {@link #putIfVersion(String, long, Object)}.
+     */
+    Optional<DataRow<V>> getRow(@NonNull String key);
+
+    /**
+     * Fetch many keys at once. Rows are returned in the iteration order of {@code keys}; missing keys are omitted.
+     */
+    List<DataRow<V>> getAll(@NonNull Collection<String> keys);
+
     CursorPage<V> scan(ScanOptions options);
 
+    /**
+     * The stream may hold native resources until it is exhausted. Close it, e.g. with try-with-resources, when it is
+     * short-circuited by {@code findFirst()}, {@code limit()} or an exception.
+     */
     Stream<DataRow<V>> stream(ScanOptions options);
 
+    /**
+     * Take a snapshot held for {@link KeyValueSnapshot#DEFAULT_LEASE} after its last use.
+     */
+    default KeyValueSnapshot<V> snapshot() {
+        return snapshot(KeyValueSnapshot.DEFAULT_LEASE);
+    }
+
+    /**
+     * @param lease how long the snapshot is held without being read before it is released.
+     */
+    KeyValueSnapshot<V> snapshot(@NonNull Duration lease);
+
     void put(@NonNull String key, V value);
 
+    /**
+     * Write a value that expires after {@code ttl}. Expired keys are no longer returned by reads and are purged in
+     * the background. Writing the key again without a ttl makes it permanent.
+     *
+     * @throws UnsupportedOperationException if the store does not keep expiry times.
+     */
+    void put(@NonNull String key, V value, @NonNull Duration ttl);
+
+    void putAll(@NonNull Map<String, V> values);
+
+    /**
+     * Write {@code value} only if the current version of {@code key} is {@code expectedVersion}, or
+     * {@link DataRow#NO_VERSION} when the key is missing. Every write of the key changes its version, so a value read
+     * with {@link #getRow(String)} is only replaced if nothing wrote the key since.
+     *
+     * @return whether the value was written.
+     * @throws UnsupportedOperationException if the store does not track versions.
+     */
+    boolean putIfVersion(@NonNull String key, long expectedVersion, V value);
+
+    /**
+     * @return whether the value was written because {@code key} was missing.
+     * @throws UnsupportedOperationException if the store does not track versions.
+     */
+    default boolean putIfAbsent(@NonNull String key, V value) {
+        return putIfVersion(key, DataRow.NO_VERSION, value);
+    }
+
+    /**
+     * Apply every operation in the batch as a single atomic write.
+     */
+    void write(@NonNull WriteBatch<V> batch);
+
+    /**
+     * Deep merge {@code patch} into the JSON form of the value of {@code key}, creating the key if it is missing.
+     * Concurrent patches of a key are all applied. See {@link io.github.de314.ac.data.utils.JsonUtils#applyPatch}.
+     *
+     * @throws UnsupportedOperationException if the store cannot patch its values.
+     */
+    void patch(@NonNull String key, @NonNull JsonNode patch);
+
+    /**
+     * Add {@code delta} to the counter {@code key} without reading it first. Counters are kept apart from values and
+     * start at {@code 0}.
+     */
+    void increment(@NonNull String key, long delta);
+
+    long getCounter(@NonNull String key);
+
+    /**
+     * Append {@code operand} to the merged value of {@code key} without reading it first. Merged values are kept apart
+     * from values.
+     */
+    void merge(@NonNull String key, @NonNull String operand);
+
+    /**
+     * @return every operand merged into {@code key} in write order, separated by {@link #MERGE_DELIMITER}.
+     */
+    Optional<String> getMerged(@NonNull String key);
+
     boolean delete(@NonNull String key);
 
+    /**
+     * Delete {@code key} only if its current version is {@code expectedVersion}.
+     *
+     * @return whether the key was deleted.
+     * @throws UnsupportedOperationException if the store does not track versions.
+     */
+    boolean compareAndDelete(@NonNull String key, long expectedVersion);
+
     long delete(ScanOptions options);
 
     void close();
@@ -0,0 +1,130 @@
+package io.github.de314.ac.data.api.kv;
+
+import com.google.common.collect.Lists;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Open snapshots of a store by id, each with a lease that is renewed whenever the snapshot is acquired. Snapshots
+ * whose lease has passed are closed the next time the registry is used, unless they are {@link #pin(String) pinned}
+ * by an open stream.
+ */
+public class SnapshotRegistry<S extends KeyValueSnapshot<?>> {
+
+    private final Map<String, Lease<S>> leases = new ConcurrentHashMap<>();
+
+    public S register(@NonNull S snapshot, @NonNull Duration lease) {
+        reap();
+        leases.put(snapshot.getId(), new Lease<>(snapshot, lease.toNanos()));
+        return snapshot;
+    }
+
+    /**
+     * @return the snapshot with its lease renewed.
+     * @throws IllegalStateException if the snapshot was closed or its lease has passed.
+     */
+    public S acquire(@NonNull String id) {
+        reap();
+        Lease<S> lease = leases.get(id);
+        if (lease == null) {
+            throw new IllegalStateException("Snapshot is closed or expired: " + id);
+        }
+        lease.renew();
+        return lease.snapshot;
+    }
+
+    /**
+     * Acquire the snapshot and keep its lease from passing until it is {@link #unpin(String) unpinned}, e.g. while a
+     * stream reads it. Pins are counted, so every pin needs its own unpin.
+     *
+     * @throws IllegalStateException if the snapshot was closed or its lease has passed.
+     */
+    public S pin(@NonNull String id) {
+        reap();
+        Lease<S> lease = leases.get(id);
+        if (lease != null) {
+            synchronized (lease) {
+                // reaping removes leases while holding them, so a lease still registered here is not being closed
+                if (leases.get(id) == lease) {
+                    lease.pins++;
+                    lease.renew();
+                    return lease.snapshot;
+                }
+            }
+        }
+        throw new IllegalStateException("Snapshot is closed or expired: " + id);
+    }
+
+    /**
+     * Release a pin taken by {@link #pin(String)}. The lease runs again from now once the last pin is released.
+     */
+    public void unpin(@NonNull String id) {
+        Lease<S> lease = leases.get(id);
+        if (lease != null) {
+            synchronized (lease) {
+                lease.pins--;
+                lease.renew();
+            }
+        }
+    }
+
+    public void remove(@NonNull String id) {
+        leases.remove(id);
+    }
+
+    public boolean isEmpty() {
+        return leases.isEmpty();
+    }
+
+    /**
+     * @return the snapshots whose lease has not passed.
+     */
+    public List<S> live() {
+        reap();
+        List<S> snapshots = Lists.newArrayListWithCapacity(leases.size());
+        leases.values().forEach(lease -> snapshots.add(lease.snapshot));
+        return snapshots;
+    }
+
+    public void closeAll() {
+        Lists.newArrayList(leases.values()).forEach(lease -> lease.snapshot.close());
+        leases.clear();
+    }
+
+    private void reap() {
+        long now = System.nanoTime();
+        for (Lease<S> lease : leases.values()) {
+            if (now - lease.expiresAt > 0 && reap(lease)) {
+                lease.snapshot.close();
+            }
+        }
+    }
+
+    private boolean reap(Lease<S> lease) {
+        synchronized (lease) {
+            return lease.pins == 0 && leases.remove(lease.snapshot.getId(), lease);
+        }
+    }
+
+    private static class Lease<S> {
+        private final S snapshot;
+        private final long leaseNanos;
+        private volatile long expiresAt;
+        /** Open streams reading the snapshot, guarded by the lease itself. */
+        private int pins;
+
+        private Lease(S snapshot, long leaseNanos) {
+            this.snapshot = snapshot;
+            this.leaseNanos = leaseNanos;
+            renew();
+        }
+
+        private void renew() {
+            expiresAt = System.nanoTime() + leaseNanos;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.de314.ac.data.api.model;
+
+import lombok.Data;
+import lombok.NonNull;
+
+/**
+ * A row of a {@link io.github.de314.ac.data.api.kv.BinaryKeyValueStore}, keyed by the stored key bytes.
+ */
+@Data
+public class BinaryDataRow<V> {
+
+    private final byte[] key;
+    private final V value;
+
+    public static <ValueT> BinaryDataRow<ValueT> of(@NonNull byte[] key, ValueT value) {
+        return new BinaryDataRow<>(key, value);
+    }
+}
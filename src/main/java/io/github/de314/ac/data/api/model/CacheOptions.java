@@ -0,0 +1,34 @@
+package io.github.de314.ac.data.api.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Bounds of the decoded value cache placed in front of a store by
+ * {@link io.github.de314.ac.data.api.kv.CachingKeyValueStore}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class CacheOptions {
+
+    @Builder.Default
+    private long maxEntries = 10_000L;
+    /** Evict entries this long after they were loaded, {@code null} keeps them until evicted by size. */
+    private Duration expireAfterWrite;
+    /** Also cache that a key is absent so repeated misses skip the store. */
+    @Builder.Default
+    private boolean cacheMisses = true;
+
+    public static CacheOptions defaults() {
+        return CacheOptions.builder().build();
+    }
+
+    public static CacheOptions of(long maxEntries, Duration expireAfterWrite) {
+        return CacheOptions.builder()
+                .maxEntries(maxEntries)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+    }
+}
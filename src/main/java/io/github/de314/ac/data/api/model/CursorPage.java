@@ -12,10 +12,30 @@ public class CursorPage<V> {
     private final List<DataRow<V>> content;
     private final ScanOptions next;
 
+    /**
+     * @return an opaque token resuming the scan with {@link ScanOptions#fromToken(String)}, {@code null} on the last
+     * page. Scans of a snapshot keep reading it while the snapshot is held.
+     */
+    public String getToken() {
+        return next != null ? next.toToken() : null;
+    }
+
     public <B> CursorPage<B> map(Function<V, B> dataMapper) {
         return new CursorPage<>(
                 content.stream()
-                        .map(row -> DataRow.of(row.getKey(), dataMapper.apply(row.getValue())))
+                        .map(row -> DataRow.of(row.getKey(), dataMapper.apply(row.getValue()), row.getVersion()))
+                        .collect(Collectors.toList()),
+                next
+        );
+    }
+
+    /**
+     * Like {@link #map(Function)} but each value is only mapped when it is first read.
+     */
+    public <B> CursorPage<B> mapLazily(Function<V, B> dataMapper) {
+        return new CursorPage<>(
+                content.stream()
+                        .map(row -> LazyDataRow.of(row.getKey(), row.getValue(), row.getVersion(), dataMapper))
                         .collect(Collectors.toList()),
                 next
         );
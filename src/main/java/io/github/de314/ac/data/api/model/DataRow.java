@@ -6,10 +6,42 @@ import lombok.NonNull;
 @Data
 public class DataRow<V> {
 
+    /** Version of missing keys and of rows read from stores that do not track versions. */
+    public static final long NO_VERSION = 0L;
+    /** Expiry time of keys written without a ttl and of rows read from stores that do not return it. */
+    public static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
     private final String key;
     private final V value;
+    /** Changes on every write of the key, see {@link io.github.de314.ac.data.api.kv.KeyValueStore#putIfVersion}. */
+    private final long version;
+    /** Epoch millis the key expires at, set by point reads of stores that keep expiry times. */
+    private final long expiresAt;
+
+    public DataRow(String key, V value) {
+        this(key, value, NO_VERSION);
+    }
+
+    public DataRow(String key, V value, long version) {
+        this(key, value, version, NEVER_EXPIRES);
+    }
+
+    public DataRow(String key, V value, long version, long expiresAt) {
+        this.key = key;
+        this.value = value;
+        this.version = version;
+        this.expiresAt = expiresAt;
+    }
 
     public static <ValueT> DataRow<ValueT> of(@NonNull String key, ValueT value) {
         return new DataRow<>(key, value);
     }
+
+    public static <ValueT> DataRow<ValueT> of(@NonNull String key, ValueT value, long version) {
+        return new DataRow<>(key, value, version);
+    }
+
+    public static <ValueT> DataRow<ValueT> of(@NonNull String key, ValueT value, long version, long expiresAt) {
+        return new DataRow<>(key, value, version, expiresAt);
+    }
 }
@@ -0,0 +1,52 @@
+package io.github.de314.ac.data.api.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.google.common.collect.Lists;
+import lombok.AllArgsConstructor;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A {@link ScanFilter} that only reads JSON fields, so stores can test it on a projection of the stored bytes.
+ */
+@AllArgsConstructor(staticName = "of")
+final class FieldScanFilter implements ScanFilter {
+
+    private final List<String> fields;
+    private final Predicate<JsonNode> predicate;
+
+    /**
+     * Values that are not JSON trees are converted to one first.
+     *
+     * @throws IllegalArgumentException for raw {@code byte[]} values, which are not decoded here.
+     */
+    @Override
+    public boolean test(Object value) {
+        if (value instanceof byte[]) {
+            throw new IllegalArgumentException(
+                    "Field filters " + fields + " need decoded values, scan a JSON or POJO view of the store"
+            );
+        }
+        return predicate.test(JsonFields.asNode(value));
+    }
+
+    @Override
+    public List<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public boolean testFields(JsonNode node) {
+        return predicate.test(node != null ? node : NullNode.getInstance());
+    }
+
+    static List<String> union(List<String> a, List<String> b) {
+        Set<String> fields = new LinkedHashSet<>(a);
+        fields.addAll(b);
+        return Lists.newArrayList(fields);
+    }
+}
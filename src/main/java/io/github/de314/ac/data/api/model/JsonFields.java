@@ -0,0 +1,31 @@
+package io.github.de314.ac.data.api.model;
+
+import io.github.de314.ac.data.utils.JsonUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Field access and comparison for the JSON {@link ScanFilter}s.
+ */
+final class JsonFields {
+
+    private static final JsonUtils JSON_UTILS = new JsonUtils();
+
+    private JsonFields() {
+    }
+
+    static JsonNode asNode(Object value) {
+        return JSON_UTILS.asNode(value);
+    }
+
+    /**
+     * @return the order of two numbers or two strings, {@code null} if the nodes are not comparable.
+     */
+    static Integer compare(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber()) {
+            return a.decimalValue().compareTo(b.decimalValue());
+        } else if (a.isTextual() && b.isTextual()) {
+            return a.textValue().compareTo(b.textValue());
+        }
+        return null;
+    }
+}
@@ -4,11 +4,21 @@ import lombok.Builder;
 import lombok.Data;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class KVInfo {
 
     private final String kind;
     private final String namespace;
     private final long size;
     private final String prettySize;
+    /** Memory attributable to this namespace: memtables, table readers and pinned cache blocks. */
+    private final long memoryUsage;
+    private final String prettyMemoryUsage;
+    /** Usage of the block cache serving this namespace, which may be shared with other namespaces. */
+    private final long blockCacheUsage;
+    /** Point reads that found a value, for stores that keep cache statistics. */
+    private final long hitCount;
+    private final long missCount;
+    /** Entries dropped to stay within a capacity bound. */
+    private final long evictionCount;
 }
@@ -0,0 +1,51 @@
+package io.github.de314.ac.data.api.model;
+
+import lombok.NonNull;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A row that keeps the stored form of its value and only decodes it on the first {@link #getValue()}, so rows that
+ * are filtered out by key or never read are not decoded at all.
+ */
+public class LazyDataRow<V> extends DataRow<V> {
+
+    private Supplier<V> decoder;
+    private volatile boolean decoded;
+    private V value;
+
+    private LazyDataRow(String key, long version, Supplier<V> decoder) {
+        super(key, null, version);
+        this.decoder = decoder;
+    }
+
+    @Override
+    public V getValue() {
+        if (!decoded) {
+            synchronized (this) {
+                if (!decoded) {
+                    value = decoder.get();
+                    decoder = null;
+                    decoded = true;
+                }
+            }
+        }
+        return value;
+    }
+
+    public boolean isDecoded() {
+        return decoded;
+    }
+
+    /**
+     * A {@code null} raw value, e.g. of a keys only scan, decodes to {@code null} without calling {@code decoder}.
+     */
+    public static <RawT, ValueT> LazyDataRow<ValueT> of(@NonNull String key, RawT raw, @NonNull Function<RawT, ValueT> decoder) {
+        return of(key, raw, NO_VERSION, decoder);
+    }
+
+    public static <RawT, ValueT> LazyDataRow<ValueT> of(@NonNull String key, RawT raw, long version, @NonNull Function<RawT, ValueT> decoder) {
+        return new LazyDataRow<>(key, version, () -> raw != null ? decoder.apply(raw) : null);
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.de314.ac.data.api.model;
 
+import lombok.Builder;
 import lombok.Value;
 
 import java.util.function.Supplier;
@@ -8,15 +9,43 @@ import java.util.function.Supplier;
  * Options for partitioning data.
  */
 @Value
+@Builder(toBuilder = true)
 public class NamespaceOptions {
 
     public static final String DATA_DIRECTORY_PATH_PREFIX = "__db";
     public static final String ROCKS_DATA_DIRECTORY_PATH = "/db.rocks";
     public static final String ARCHIVE_DIRECTORY_PATH = "/archive";
+    /** Root path of the database hosting every namespace as a column family in the shared store mode. */
+    public static final String SHARED_DATA_DIRECTORY_PATH = DATA_DIRECTORY_PATH_PREFIX + ".shared";
 
     private String namespace;
     /** Root path for disk persistence. This will include storage specific files and directories, e.g. RockDB. */
     private String path;
+    /** Maintain an exact key count on every write so that {@code count()} does not need to iterate the store. */
+    private boolean exactCount;
+    /** Storage engine tuning applied when the namespace is opened. */
+    @Builder.Default
+    private RocksTuning tuning = RocksTuning.defaults();
+    /** Format new values are written in. Values already stored in another format stay readable. */
+    @Builder.Default
+    private ValueCodec codec = ValueCodec.JSON;
+    /**
+     * Store an expiry time with every value so keys can be written with a time to live. This changes the stored
+     * value format, so it has to be set when the namespace is created.
+     */
+    private boolean ttl;
+    /**
+     * Store a version with every value so writes can be made conditional on it, see
+     * {@link io.github.de314.ac.data.api.kv.KeyValueStore#putIfVersion}. Like {@link #ttl}, this changes the stored
+     * value format.
+     */
+    private boolean versioned;
+    /**
+     * Accept {@link io.github.de314.ac.data.api.kv.KeyValueStore#patch JSON patches}, which RocksDB appends to the
+     * stored document and readers merge into it. Values of other namespaces are never checked for patches. Like
+     * {@link #ttl}, this changes the stored value format.
+     */
+    private boolean patches;
 
     public String getRocksPath() {
         return path + ROCKS_DATA_DIRECTORY_PATH;
@@ -41,6 +70,9 @@ public class NamespaceOptions {
     }
 
     public static NamespaceOptions create(String namespace) {
-        return new NamespaceOptions(namespace, DATA_DIRECTORY_PATH_PREFIX + namespace);
+        return NamespaceOptions.builder()
+                .namespace(namespace)
+                .path(DATA_DIRECTORY_PATH_PREFIX + namespace)
+                .build();
     }
 }
@@ -0,0 +1,122 @@
+package io.github.de314.ac.data.api.model;
+
+import com.google.common.collect.ImmutableList;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import org.rocksdb.CompressionType;
+
+import java.util.List;
+
+/**
+ * RocksDB table, memtable and compaction settings for a namespace.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RocksTuning {
+
+    public static final String PRESET_DEFAULT = "default";
+    public static final String PRESET_POINT_LOOKUP = "point-lookup";
+    public static final String PRESET_SCAN_HEAVY = "scan-heavy";
+    public static final String PRESET_WRITE_HEAVY = "write-heavy";
+
+    private static final long KB = 1024L;
+    private static final long MB = 1024L * KB;
+
+    /** Bloom filter bits per key, {@code 0} disables the filter. */
+    @Builder.Default
+    private int bloomFilterBitsPerKey = 10;
+    /**
+     * Length of the fixed-length prefix extractor, {@code 0} disables it. Prefix scans at least this long stay inside
+     * their prefix and skip SST files and memtables by a prefix bloom filter. Keys shorter than this are not indexed.
+     */
+    @Builder.Default
+    private int prefixLength = 0;
+    @Builder.Default
+    private long blockSize = 4 * KB;
+    @Builder.Default
+    private long blockCacheSize = 8 * MB;
+    /** Keep index and filter blocks in the block cache so they are bounded by {@link #blockCacheSize}. */
+    @Builder.Default
+    private boolean cacheIndexAndFilterBlocks = false;
+    /** Compression for each level starting at L0. The last entry applies to all deeper levels. Empty uses RocksDB's default. */
+    @Builder.Default
+    private List<CompressionType> compressionPerLevel = ImmutableList.of();
+    @Builder.Default
+    private long writeBufferSize = 64 * MB;
+    @Builder.Default
+    private int maxWriteBufferNumber = 2;
+    @Builder.Default
+    private int maxBackgroundJobs = 2;
+
+    public static RocksTuning defaults() {
+        return RocksTuning.builder().build();
+    }
+
+    /**
+     * Random reads of individual keys: small blocks, bloom filters and a large cache so misses skip SST files.
+     */
+    public static RocksTuning pointLookup() {
+        return RocksTuning.builder()
+                .bloomFilterBitsPerKey(10)
+                .blockSize(4 * KB)
+                .blockCacheSize(128 * MB)
+                .cacheIndexAndFilterBlocks(true)
+                .compressionPerLevel(ImmutableList.of(
+                        CompressionType.NO_COMPRESSION,
+                        CompressionType.NO_COMPRESSION,
+                        CompressionType.LZ4_COMPRESSION
+                ))
+                .build();
+    }
+
+    /**
+     * Large ordered range reads: big blocks and no bloom filters, which do not help iterators.
+     */
+    public static RocksTuning scanHeavy() {
+        return RocksTuning.builder()
+                .bloomFilterBitsPerKey(0)
+                .blockSize(64 * KB)
+                .blockCacheSize(64 * MB)
+                .compressionPerLevel(ImmutableList.of(
+                        CompressionType.LZ4_COMPRESSION,
+                        CompressionType.LZ4_COMPRESSION,
+                        CompressionType.ZSTD_COMPRESSION
+                ))
+                .build();
+    }
+
+    /**
+     * Ingest-bound workloads: larger and more memtables, more background threads and cheap compression up top.
+     */
+    public static RocksTuning writeHeavy() {
+        return RocksTuning.builder()
+                .bloomFilterBitsPerKey(10)
+                .blockSize(16 * KB)
+                .blockCacheSize(32 * MB)
+                .writeBufferSize(128 * MB)
+                .maxWriteBufferNumber(4)
+                .maxBackgroundJobs(4)
+                .compressionPerLevel(ImmutableList.of(
+                        CompressionType.NO_COMPRESSION,
+                        CompressionType.NO_COMPRESSION,
+                        CompressionType.LZ4_COMPRESSION
+                ))
+                .build();
+    }
+
+    public static RocksTuning preset(@NonNull String name) {
+        switch (name) {
+            case PRESET_DEFAULT:
+                return defaults();
+            case PRESET_POINT_LOOKUP:
+                return pointLookup();
+            case PRESET_SCAN_HEAVY:
+                return scanHeavy();
+            case PRESET_WRITE_HEAVY:
+                return writeHeavy();
+            default:
+                throw new IllegalArgumentException("Unknown rocks tuning preset: " + name);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.de314.ac.data.api.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Value predicate of a scan. Stores evaluate it before the scan limit, so a page holds {@code limit} matching rows.
+ *
+ * The field filters read JSON pointer paths. Stores of encoded JSON test them on just those fields, parsed from the
+ * stored bytes before a value is bound; in-memory values are converted to a tree first. Raw {@code byte[]} stores
+ * reject them.
+ */
+@FunctionalInterface
+public interface ScanFilter {
+
+    boolean test(Object value);
+
+    /**
+     * @return the JSON pointer paths read by a filter of fields only, {@code null} if it needs the decoded value.
+     */
+    default List<String> getFields() {
+        return null;
+    }
+
+    /**
+     * Tests a JSON tree holding at least the {@link #getFields() fields} of a value.
+     */
+    default boolean testFields(JsonNode fields) {
+        return test(fields);
+    }
+
+    default ScanFilter and(@NonNull ScanFilter other) {
+        if (getFields() != null && other.getFields() != null) {
+            return FieldScanFilter.of(
+                    FieldScanFilter.union(getFields(), other.getFields()),
+                    node -> testFields(node) && other.testFields(node)
+            );
+        }
+        return value -> test(value) && other.test(value);
+    }
+
+    default ScanFilter or(@NonNull ScanFilter other) {
+        if (getFields() != null && other.getFields() != null) {
+            return FieldScanFilter.of(
+                    FieldScanFilter.union(getFields(), other.getFields()),
+                    node -> testFields(node) || other.testFields(node)
+            );
+        }
+        return value -> test(value) || other.test(value);
+    }
+
+    default ScanFilter negate() {
+        if (getFields() != null) {
+            return FieldScanFilter.of(getFields(), node -> !testFields(node));
+        }
+        return value -> !test(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> ScanFilter of(@NonNull Predicate<V> predicate) {
+        return value -> predicate.test((V) value);
+    }
+
+    static ScanFilter allOf(ScanFilter... filters) {
+        return Arrays.stream(filters).reduce(ScanFilter::and).orElse(value -> true);
+    }
+
+    static ScanFilter fieldEquals(@NonNull String path, Object expected) {
+        JsonNode expectedNode = JsonFields.asNode(expected);
+        return FieldScanFilter.of(Collections.singletonList(path), node -> {
+            JsonNode actual = node.at(path);
+            if (actual.isMissingNode()) {
+                return expectedNode.isNull();
+            }
+            Integer comparison = JsonFields.compare(actual, expectedNode);
+            return comparison != null ? comparison == 0 : actual.equals(expectedNode);
+        });
+    }
+
+    /**
+     * Matches numeric or text fields within the inclusive bounds. A {@code null} bound is open.
+     */
+    static ScanFilter fieldBetween(@NonNull String path, Object min, Object max) {
+        JsonNode minNode = min != null ? JsonFields.asNode(min) : null;
+        JsonNode maxNode = max != null ? JsonFields.asNode(max) : null;
+        return FieldScanFilter.of(Collections.singletonList(path), node -> {
+            JsonNode actual = node.at(path);
+            if (actual.isMissingNode() || actual.isNull()) {
+                return false;
+            }
+            if (minNode != null) {
+                Integer comparison = JsonFields.compare(actual, minNode);
+                if (comparison == null || comparison < 0) {
+                    return false;
+                }
+            }
+            if (maxNode != null) {
+                Integer comparison = JsonFields.compare(actual, maxNode);
+                if (comparison == null || comparison > 0) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    static ScanFilter fieldAtLeast(@NonNull String path, @NonNull Object min) {
+        return fieldBetween(path, min, null);
+    }
+
+    static ScanFilter fieldAtMost(@NonNull String path, @NonNull Object max) {
+        return fieldBetween(path, null, max);
+    }
+}
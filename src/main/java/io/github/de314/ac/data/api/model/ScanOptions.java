@@ -1,23 +1,61 @@
 package io.github.de314.ac.data.api.model;
 
+import io.github.de314.ac.data.api.key.KeyCodecs;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NonNull;
+import lombok.Singular;
 
+import java.util.List;
 import java.util.Optional;
 
 @Data
 @Builder(toBuilder = true)
 public class ScanOptions {
 
+    private static final byte TOKEN_VERSION = 1;
+
     private final String startKey;
     private final String endKey;
+    /** Only keys starting with this prefix are scanned, within the start and end keys if those are set too. */
+    private final String prefix;
     private final Long limit;
     private final Boolean keysOnly;
+    /** Scan from the end of the range backwards, e.g. the newest rows of time-prefixed keys. */
+    private final Boolean reverse;
+    /**
+     * JSON pointer paths, e.g. {@code /title}, of the fields to read from each value. Stores of JSON values only
+     * decode these fields and the objects enclosing them; other stores return whole values.
+     */
+    @Singular("project")
+    private final List<String> projection;
+    /** Only rows whose value matches are returned, counted against {@link #limit} and used for the next cursor. */
+    private final ScanFilter filter;
+    /** Id of a {@code KeyValueSnapshot} of the store to read from instead of its current state. */
+    private final String snapshot;
 
+    /**
+     * Keys are compared by code point, the order of their UTF-8 bytes in every store.
+     */
     public boolean keyInRange(String key) {
-        return (startKey == null || startKey.compareTo(key) <= 0)
-                && (endKey == null || endKey.compareTo(key) >= 0);
+        return (startKey == null || KeyCodecs.compareUtf8(startKey, key) <= 0)
+                && (endKey == null || KeyCodecs.compareUtf8(endKey, key) >= 0)
+                && (prefix == null || key.startsWith(prefix));
+    }
+
+    public boolean hasFilter() {
+        return filter != null;
+    }
+
+    /**
+     * @return whether {@code value} passes the {@link #filter}, always {@code true} without one.
+     */
+    public boolean test(Object value) {
+        return filter == null || filter.test(value);
     }
 
     public long getLimit(long defaultValue) {
@@ -28,6 +66,70 @@ public class ScanOptions {
         return keysOnly != null ? keysOnly : defaultValue;
     }
 
+    public boolean getReverse(boolean defaultValue) {
+        return reverse != null ? reverse : defaultValue;
+    }
+
+    /**
+     * Opaque token that resumes these options with {@link #fromToken(String)}. It holds the range, prefix, direction,
+     * limit, projection and snapshot, but not the {@link #filter}.
+     */
+    public String toToken() {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeByte(TOKEN_VERSION);
+        writeNullable(out, startKey);
+        writeNullable(out, endKey);
+        writeNullable(out, prefix);
+        writeNullable(out, snapshot);
+        out.writeLong(limit != null ? limit : -1L);
+        out.writeByte(keysOnly == null ? -1 : keysOnly ? 1 : 0);
+        out.writeByte(reverse == null ? -1 : reverse ? 1 : 0);
+        out.writeInt(projection.size());
+        projection.forEach(out::writeUTF);
+        return BaseEncoding.base64Url().omitPadding().encode(out.toByteArray());
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code token} was not created by {@link #toToken()}.
+     */
+    public static ScanOptions.ScanOptionsBuilder fromToken(@NonNull String token) {
+        try {
+            ByteArrayDataInput in = ByteStreams.newDataInput(BaseEncoding.base64Url().omitPadding().decode(token));
+            if (in.readByte() != TOKEN_VERSION) {
+                throw new IllegalArgumentException("Unsupported scan token version");
+            }
+            ScanOptions.ScanOptionsBuilder builder = ScanOptions.builder()
+                    .startKey(readNullable(in))
+                    .endKey(readNullable(in))
+                    .prefix(readNullable(in))
+                    .snapshot(readNullable(in));
+            long limit = in.readLong();
+            builder.limit(limit >= 0 ? limit : null);
+            byte keysOnly = in.readByte();
+            builder.keysOnly(keysOnly < 0 ? null : keysOnly == 1);
+            byte reverse = in.readByte();
+            builder.reverse(reverse < 0 ? null : reverse == 1);
+            for (int i = in.readInt(); i > 0; i--) {
+                builder.project(in.readUTF());
+            }
+            return builder;
+        } catch (IllegalStateException e) {
+            // truncated tokens surface as IllegalStateException from ByteArrayDataInput
+            throw new IllegalArgumentException("Malformed scan token", e);
+        }
+    }
+
+    private static void writeNullable(ByteArrayDataOutput out, String value) {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(ByteArrayDataInput in) {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
     public static ScanOptions.ScanOptionsBuilder all() {
         return fromCursor(null);
     }
@@ -41,10 +143,9 @@ public class ScanOptions {
     }
 
     public static ScanOptions.ScanOptionsBuilder fromPrefix(@NonNull String prefix, String cursor) {
-        return fromRange(
-                cursor != null ? cursor : prefix,
-                prefix + ((char)Short.MAX_VALUE)
-        );
+        return ScanOptions.builder()
+                .startKey(cursor)
+                .prefix(prefix);
     }
 
     public static ScanOptions.ScanOptionsBuilder fromRange(String startKey, String endKey) {
@@ -0,0 +1,41 @@
+package io.github.de314.ac.data.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Serialization format of stored values.
+ *
+ * Binary codecs prefix every value with a header byte naming the codec. Text JSON is written without one, as it
+ * always was, so a namespace can switch codecs and keep reading old values while they are rewritten lazily.
+ */
+@Getter
+@AllArgsConstructor
+public enum ValueCodec {
+
+    JSON((byte) 0x00),
+    SMILE((byte) 0x02),
+    CBOR((byte) 0x03);
+
+    /** Value header of the codec, {@code 0x00} for the header-less text JSON. */
+    private final byte header;
+
+    public boolean hasHeader() {
+        return this != JSON;
+    }
+
+    /**
+     * @return the codec {@code value} was written with. Control bytes never start a JSON document so anything that
+     * does not begin with a known header is text JSON.
+     */
+    public static ValueCodec detect(byte[] value) {
+        if (value != null && value.length > 0) {
+            if (value[0] == SMILE.header) {
+                return SMILE;
+            } else if (value[0] == CBOR.header) {
+                return CBOR;
+            }
+        }
+        return JSON;
+    }
+}
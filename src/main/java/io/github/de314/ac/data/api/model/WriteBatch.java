@@ -0,0 +1,74 @@
+package io.github.de314.ac.data.api.model;
+
+import com.google.common.collect.Lists;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ordered set of puts and deletes that a store commits atomically. A {@code null} value is treated as a delete.
+ */
+@Getter
+public class WriteBatch<V> {
+
+    private final List<Operation<V>> operations;
+
+    private WriteBatch(List<Operation<V>> operations) {
+        this.operations = operations;
+    }
+
+    public WriteBatch<V> put(@NonNull String key, V value) {
+        operations.add(new Operation<>(key, value));
+        return this;
+    }
+
+    public WriteBatch<V> putAll(@NonNull Map<String, V> values) {
+        values.forEach(this::put);
+        return this;
+    }
+
+    public WriteBatch<V> delete(@NonNull String key) {
+        operations.add(new Operation<>(key, null));
+        return this;
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    public <B> WriteBatch<B> map(Function<V, B> dataMapper) {
+        return new WriteBatch<>(
+                operations.stream()
+                        .map(op -> new Operation<>(op.getKey(), op.isDelete() ? null : dataMapper.apply(op.getValue())))
+                        .collect(Collectors.toCollection(Lists::newArrayList))
+        );
+    }
+
+    public static <ValueT> WriteBatch<ValueT> create() {
+        return new WriteBatch<>(Lists.newArrayList());
+    }
+
+    public static <ValueT> WriteBatch<ValueT> of(@NonNull Map<String, ValueT> values) {
+        return WriteBatch.<ValueT>create().putAll(values);
+    }
+
+    @Data
+    public static class Operation<V> {
+
+        private final String key;
+        private final V value;
+
+        public boolean isDelete() {
+            return value == null;
+        }
+    }
+}
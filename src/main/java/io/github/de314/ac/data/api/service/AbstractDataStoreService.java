@@ -1,6 +1,8 @@
 package io.github.de314.ac.data.api.service;
 
+import io.github.de314.ac.data.api.kv.CachingKeyValueStore;
 import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.model.CacheOptions;
 import io.github.de314.ac.data.api.model.KVInfo;
 import io.github.de314.ac.data.api.model.ScanOptions;
 import io.github.de314.ac.data.api.service.archive.ArchiveStrategy;
@@ -10,6 +12,7 @@ import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -25,6 +28,13 @@ public abstract class AbstractDataStoreService implements DataStoreService {
     @Getter(AccessLevel.PROTECTED)
     private final KeyValueStore<StoreEntry> storeCache;
 
+    /**
+     * When set, stores created from now on are wrapped in a {@link CachingKeyValueStore} with these bounds.
+     */
+    @Getter
+    @Setter
+    private volatile CacheOptions cacheOptions;
+
     public AbstractDataStoreService(String storeKind) {
         this.storeKind = storeKind;
         this.storeCache = MapKeyValueStore.create("__store-service-" + storeKind);
@@ -54,7 +64,7 @@ public abstract class AbstractDataStoreService implements DataStoreService {
     public KeyValueStore<JsonNode> getOrCreate(String namespace) {
         return get(namespace)
                 .orElseGet(() -> {
-                    KeyValueStore<JsonNode> store = create(namespace);
+                    KeyValueStore<JsonNode> store = decorate(namespace, create(namespace));
                     storeCache.put(namespace, StoreEntry.builder()
                             .namespace(namespace)
                             .store(store)
@@ -76,7 +86,7 @@ public abstract class AbstractDataStoreService implements DataStoreService {
     public <ValueT> KeyValueStore<ValueT> getOrCreate(String namespace, Class<ValueT> modelClass) {
         return get(namespace, modelClass)
                 .orElseGet(() -> {
-                    KeyValueStore<ValueT> store = create(namespace, modelClass);
+                    KeyValueStore<ValueT> store = decorate(namespace, create(namespace, modelClass));
                     storeCache.put(namespace, StoreEntry.builder()
                             .namespace(namespace)
                             .store(store)
@@ -86,6 +96,19 @@ public abstract class AbstractDataStoreService implements DataStoreService {
                 });
     }
 
+    /**
+     * Wrap a newly created store, by default in a value cache if {@link #getCacheOptions(String)} returns bounds.
+     */
+    protected <ValueT> KeyValueStore<ValueT> decorate(String namespace, KeyValueStore<ValueT> store) {
+        return getCacheOptions(namespace)
+                .map(options -> CachingKeyValueStore.create(store, options))
+                .orElse(store);
+    }
+
+    protected Optional<CacheOptions> getCacheOptions(String namespace) {
+        return Optional.ofNullable(cacheOptions);
+    }
+
     @Override
     public void backup(String namespace, ArchiveStrategy archiveStrategy) {
         // no-op
@@ -1,10 +1,12 @@
 package io.github.de314.ac.data.api.service;
 
+import io.github.de314.ac.data.api.model.ValueCodec;
 import io.github.de314.ac.data.utils.JsonUtils;
 import com.fasterxml.jackson.databind.JsonNode;
 import lombok.Data;
 
 import java.nio.charset.Charset;
+import java.util.List;
 import java.util.function.Function;
 
 @Data
@@ -14,6 +16,45 @@ public class DataAdapter<A, B> {
 
     private final Function<A, B> abFunc;
     private final Function<B, A> baFunc;
+    /** Builds a decoder reading only the given JSON pointer paths, {@code null} if projections are not supported. */
+    private final Function<List<String>, Function<B, A>> projectionFunc;
+    /** Builds a reader of the given JSON pointer paths into a tree, {@code null} if values are not encoded JSON. */
+    private final Function<List<String>, Function<B, JsonNode>> fieldsFunc;
+
+    public DataAdapter(Function<A, B> abFunc, Function<B, A> baFunc) {
+        this(abFunc, baFunc, null, null);
+    }
+
+    public DataAdapter(
+            Function<A, B> abFunc,
+            Function<B, A> baFunc,
+            Function<List<String>, Function<B, A>> projectionFunc,
+            Function<List<String>, Function<B, JsonNode>> fieldsFunc
+    ) {
+        this.abFunc = abFunc;
+        this.baFunc = baFunc;
+        this.projectionFunc = projectionFunc;
+        this.fieldsFunc = fieldsFunc;
+    }
+
+    /**
+     * @return a decoder limited to the {@code projection} paths, or the full decoder if there are none or the
+     * adapter cannot project.
+     */
+    public Function<B, A> getBaFunc(List<String> projection) {
+        if (projection == null || projection.isEmpty() || projectionFunc == null) {
+            return baFunc;
+        }
+        return projectionFunc.apply(projection);
+    }
+
+    /**
+     * @return a reader of only the {@code fields} of stored values, or {@code null} if the adapter cannot read them
+     * without decoding the whole value.
+     */
+    public Function<B, JsonNode> getFieldsFunc(List<String> fields) {
+        return fieldsFunc != null ? fieldsFunc.apply(fields) : null;
+    }
 
     public B ab(A value) {
         return abFunc.apply(value);
@@ -38,16 +79,31 @@ public class DataAdapter<A, B> {
     }
 
     public static <T> DataAdapter<T, byte[]> pojoByteConverter(Class<T> targetClass) {
+        return pojoByteConverter(targetClass, ValueCodec.JSON);
+    }
+
+    /**
+     * Writes values with {@code codec} and reads values written with any codec.
+     */
+    public static <T> DataAdapter<T, byte[]> pojoByteConverter(Class<T> targetClass, ValueCodec codec) {
         return new DataAdapter<>(
-                jsonUtils::asBytes,
-                b -> jsonUtils.fromJson(b, targetClass)
+                v -> jsonUtils.encode(v, codec),
+                jsonUtils.decoderFor(targetClass),
+                projection -> jsonUtils.decoderFor(targetClass, projection),
+                fields -> jsonUtils.decoderFor(JsonNode.class, fields)
         );
     }
 
     public static DataAdapter<JsonNode, byte[]> jsonByteAdapter() {
+        return jsonByteAdapter(ValueCodec.JSON);
+    }
+
+    public static DataAdapter<JsonNode, byte[]> jsonByteAdapter(ValueCodec codec) {
         return new DataAdapter<>(
-                jsonUtils::asBytes,
-                jsonUtils::fromJson
+                v -> jsonUtils.encode(v, codec),
+                jsonUtils.decoderFor(JsonNode.class),
+                projection -> jsonUtils.decoderFor(JsonNode.class, projection),
+                fields -> jsonUtils.decoderFor(JsonNode.class, fields)
         );
     }
 
@@ -0,0 +1,72 @@
+package io.github.de314.ac.data.disk;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * What a column family of a namespace holds, which decides its merge operator. Column families other than the values
+ * are named after their namespace and role joined by {@link #SEPARATOR}, which namespace names may not contain, so a
+ * name always resolves to exactly one namespace and role. A namespace's own database leaves the namespace out.
+ */
+public enum ColumnFamilyRole {
+    VALUES(null),
+    /** Keys ordered by expiry time, see {@link io.github.de314.ac.data.api.model.NamespaceOptions#isTtl()}. */
+    EXPIRY_INDEX("expiry-index"),
+    /** Counters updated by RocksDB's uint64add merge operator. */
+    COUNTERS("counters"),
+    /** Merged values updated by RocksDB's string-append merge operator. */
+    MERGED("merged");
+
+    public static final char SEPARATOR = '/';
+
+    @Getter
+    private final String suffix;
+
+    ColumnFamilyRole(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * @param namespace the namespace of a shared database, {@code null} in the namespace's own database.
+     */
+    public String columnFamilyName(String namespace) {
+        if (this == VALUES) {
+            return namespace != null ? namespace : RocksDatabase.DEFAULT_COLUMN_FAMILY;
+        }
+        return (namespace != null ? namespace : "") + SEPARATOR + suffix;
+    }
+
+    public static ColumnFamilyRole of(@NonNull String columnFamily) {
+        int separator = columnFamily.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            return VALUES;
+        }
+        String suffix = columnFamily.substring(separator + 1);
+        for (ColumnFamilyRole role : values()) {
+            if (suffix.equals(role.suffix)) {
+                return role;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column family: " + columnFamily);
+    }
+
+    /**
+     * @return the namespace owning {@code columnFamily} in a shared database.
+     */
+    public static String namespaceOf(@NonNull String columnFamily) {
+        int separator = columnFamily.lastIndexOf(SEPARATOR);
+        return separator < 0 ? columnFamily : columnFamily.substring(0, separator);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code namespace} cannot be told apart from the column families of others.
+     */
+    public static void checkNamespace(@NonNull String namespace) {
+        if (namespace.indexOf(SEPARATOR) >= 0 || namespace.equals(RocksDatabase.DEFAULT_COLUMN_FAMILY)) {
+            throw new IllegalArgumentException(
+                    "Namespaces of a shared database may not contain '" + SEPARATOR + "' or be named "
+                            + RocksDatabase.DEFAULT_COLUMN_FAMILY + ": " + namespace
+            );
+        }
+    }
+}
@@ -3,13 +3,19 @@ package io.github.de314.ac.data.disk;
 import io.github.de314.ac.data.api.kv.AdaptedKeyValueStore;
 import io.github.de314.ac.data.api.kv.KeyValueStore;
 import io.github.de314.ac.data.api.model.NamespaceOptions;
+import io.github.de314.ac.data.api.model.RocksTuning;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import io.github.de314.ac.data.api.service.DataAdapter;
 import io.github.de314.ac.data.api.service.AbstractDataStoreService;
 import io.github.de314.ac.data.api.service.archive.ArchiveStrategy;
 import io.github.de314.ac.data.api.service.DataStoreService;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Maps;
+import lombok.Getter;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Optional;
+import java.util.Map;
 import java.util.function.Consumer;
 
 @Slf4j
@@ -17,20 +23,73 @@ public class RockDBDataStoreService extends AbstractDataStoreService {
 
     public static final RockDBDataStoreService INSTANCE = new RockDBDataStoreService();
 
+    public enum StoreMode {
+        /** Every namespace is its own database under {@link NamespaceOptions#getRocksPath()}. */
+        DIRECTORY_PER_NAMESPACE,
+        /** Every namespace is a column family of one database, sharing its WAL and background threads. */
+        SHARED_COLUMN_FAMILIES
+    }
+
+    /** Block cache and write buffer budget shared by every namespace opened by this service. */
+    @Getter
+    private final RocksMemoryPool memoryPool;
+    @Getter
+    private final StoreMode storeMode;
+    /** Database hosting all namespaces, only set in {@link StoreMode#SHARED_COLUMN_FAMILIES} mode. */
+    private final RocksDatabase sharedDatabase;
+    private final Map<String, RocksKeyValueStore> rocksStores = Maps.newConcurrentMap();
+
     public RockDBDataStoreService() {
+        this(RocksMemoryPool.create());
+    }
+
+    public RockDBDataStoreService(RocksMemoryPool memoryPool) {
+        this(memoryPool, StoreMode.DIRECTORY_PER_NAMESPACE);
+    }
+
+    public RockDBDataStoreService(RocksMemoryPool memoryPool, StoreMode storeMode) {
         super(RocksKeyValueStore.STORE_KIND);
+        this.memoryPool = memoryPool;
+        this.storeMode = storeMode;
+        this.sharedDatabase = storeMode == StoreMode.SHARED_COLUMN_FAMILIES
+                ? RocksDatabase.open(
+                        NamespaceOptions.SHARED_DATA_DIRECTORY_PATH + NamespaceOptions.ROCKS_DATA_DIRECTORY_PATH,
+                        RocksDbService.createDbOptions(RocksTuning.defaults(), memoryPool),
+                        name -> RocksDbService.createColumnFamilyOptions(
+                                ColumnFamilyRole.of(name),
+                                getNamespaceOptions(ColumnFamilyRole.namespaceOf(name)),
+                                memoryPool.getBlockCache()
+                        )
+                )
+                : null;
+    }
+
+    /**
+     * Options used when a namespace is first opened by this service.
+     */
+    protected NamespaceOptions getNamespaceOptions(String namespace) {
+        return NamespaceOptions.create(namespace);
     }
 
     @Override
     protected KeyValueStore<JsonNode> create(String namespace) {
-        return AdaptedKeyValueStore.createJsonStore(
-                RocksKeyValueStore.create(NamespaceOptions.create(namespace))
-        );
+        RocksKeyValueStore rocksStore = createRocksStore(namespace);
+        return AdaptedKeyValueStore.createJsonStore(rocksStore, rocksStore.getNamespaceOptions().getCodec());
     }
 
     @Override
     protected <ValueT> KeyValueStore<ValueT> create(String namespace, Class<ValueT> modelClass) {
-        return RocksKeyValueStore.create(namespace, modelClass);
+        RocksKeyValueStore rocksStore = createRocksStore(namespace);
+        return AdaptedKeyValueStore.createPojoStore(rocksStore, modelClass, rocksStore.getNamespaceOptions().getCodec());
+    }
+
+    private RocksKeyValueStore createRocksStore(String namespace) {
+        NamespaceOptions options = getNamespaceOptions(namespace);
+        RocksKeyValueStore rocksStore = sharedDatabase != null
+                ? RocksKeyValueStore.create(options, sharedDatabase)
+                : RocksKeyValueStore.create(options, memoryPool);
+        rocksStores.put(namespace, rocksStore);
+        return rocksStore;
     }
 
     @Override
@@ -60,13 +119,48 @@ public class RockDBDataStoreService extends AbstractDataStoreService {
         useStore(namespace, rocksStore -> {
             rocksStore.destroy();
             getStoreCache().delete(namespace);
+            rocksStores.remove(namespace);
         });
     }
 
+    /**
+     * Atomically commit batches for several namespaces in a single write. Only available in
+     * {@link StoreMode#SHARED_COLUMN_FAMILIES} mode, where every namespace lives in the same database.
+     */
+    @SuppressWarnings("unchecked")
+    public void write(@NonNull Map<String, WriteBatch<?>> batches) {
+        if (sharedDatabase == null) {
+            throw new UnsupportedOperationException("Cross namespace batches require " + StoreMode.SHARED_COLUMN_FAMILIES);
+        }
+        Map<RocksKeyValueStore, WriteBatch<byte[]>> rocksBatches = Maps.newLinkedHashMap();
+        batches.forEach((namespace, batch) -> {
+            if (!rocksStores.containsKey(namespace)) {
+                getOrCreate(namespace);
+            }
+            RocksKeyValueStore rocksStore = rocksStores.get(namespace);
+            DataAdapter<Object, byte[]> valueAdapter = DataAdapter.pojoByteConverter(
+                    Object.class,
+                    rocksStore.getNamespaceOptions().getCodec()
+            );
+            rocksBatches.put(rocksStore, ((WriteBatch<Object>) batch).map(valueAdapter.getAbFunc()));
+        });
+        RocksKeyValueStore.write(rocksBatches);
+    }
+
+    /**
+     * Close every open namespace and, in shared mode, the shared database.
+     */
+    public void close() {
+        rocksStores.values().forEach(RocksKeyValueStore::close);
+        rocksStores.clear();
+        if (sharedDatabase != null) {
+            sharedDatabase.close();
+        }
+    }
+
     private void useStore(String namespace, Consumer<RocksKeyValueStore> job) {
-        Optional<StoreEntry> storeEntry = getStoreCache().get(namespace);
-        if (storeEntry.isPresent()) {
-            RocksKeyValueStore rocksStore = (RocksKeyValueStore) storeEntry.get().getStore();
+        RocksKeyValueStore rocksStore = rocksStores.get(namespace);
+        if (rocksStore != null) {
             synchronized (rocksStore) {
                 job.accept(rocksStore);
             }
@@ -0,0 +1,180 @@
+package io.github.de314.ac.data.disk;
+
+import io.github.de314.ac.data.utils.UncheckedException;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A single RocksDB instance and its column families.
+ *
+ * In the per-directory store mode every namespace owns a database and only uses the default column family. In the
+ * shared mode one database hosts every namespace as its own column family so that they share a WAL, background
+ * threads and can be written atomically together.
+ */
+@Slf4j
+public class RocksDatabase implements AutoCloseable {
+
+    public static final String DEFAULT_COLUMN_FAMILY = new String(RocksDB.DEFAULT_COLUMN_FAMILY, StandardCharsets.UTF_8);
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    @Getter
+    private final String path;
+    private final DBOptions dbOptions;
+    private final Function<String, ColumnFamilyOptions> columnFamilyOptionsFactory;
+    private final Map<String, ColumnFamilyHandle> columnFamilies = Maps.newConcurrentMap();
+    private final Map<String, ColumnFamilyOptions> columnFamilyOptions = Maps.newConcurrentMap();
+
+    @Getter
+    private final RocksDB rocks;
+
+    private RocksDatabase(String path, DBOptions dbOptions, Function<String, ColumnFamilyOptions> columnFamilyOptionsFactory) {
+        this.path = path;
+        this.dbOptions = dbOptions;
+        this.columnFamilyOptionsFactory = columnFamilyOptionsFactory;
+
+        List<String> names = listColumnFamilies(path);
+        List<ColumnFamilyDescriptor> descriptors = Lists.newArrayList();
+        for (String name : names) {
+            ColumnFamilyOptions options = columnFamilyOptionsFactory.apply(name);
+            columnFamilyOptions.put(name, options);
+            descriptors.add(new ColumnFamilyDescriptor(name.getBytes(StandardCharsets.UTF_8), options));
+        }
+        List<ColumnFamilyHandle> handles = Lists.newArrayList();
+        this.rocks = UncheckedException.safe(() -> RocksDB.open(dbOptions, path, descriptors, handles))
+                .orElse(null);
+        for (int i = 0; i < names.size(); i++) {
+            columnFamilies.put(names.get(i), handles.get(i));
+        }
+        log.debug("Opened rocks database {} with column families {}", path, names);
+    }
+
+    private static List<String> listColumnFamilies(String path) {
+        List<String> names = Lists.newArrayList(DEFAULT_COLUMN_FAMILY);
+        try (Options options = new Options()) {
+            for (byte[] name : RocksDB.listColumnFamilies(options, path)) {
+                String columnFamily = new String(name, StandardCharsets.UTF_8);
+                if (!names.contains(columnFamily)) {
+                    names.add(columnFamily);
+                }
+            }
+        } catch (Exception e) {
+            log.trace("No existing column families at {}", path);
+        }
+        return names;
+    }
+
+    public ColumnFamilyHandle getDefaultColumnFamily() {
+        return columnFamilies.get(DEFAULT_COLUMN_FAMILY);
+    }
+
+    /**
+     * @return the handle for {@code name}, creating the column family with the configured options when missing.
+     * @throws UncheckedException if the column family cannot be created.
+     */
+    public ColumnFamilyHandle getOrCreateColumnFamily(@NonNull String name) {
+        ColumnFamilyHandle handle = columnFamilies.get(name);
+        if (handle == null) {
+            synchronized (columnFamilies) {
+                handle = columnFamilies.get(name);
+                if (handle == null) {
+                    ColumnFamilyOptions options = columnFamilyOptionsFactory.apply(name);
+                    try {
+                        handle = rocks.createColumnFamily(
+                                new ColumnFamilyDescriptor(name.getBytes(StandardCharsets.UTF_8), options)
+                        );
+                    } catch (RocksDBException e) {
+                        options.close();
+                        throw new UncheckedException("Could not create column family " + name + " in " + path, e);
+                    }
+                    columnFamilyOptions.put(name, options);
+                    columnFamilies.put(name, handle);
+                    log.debug("Created column family {} in {}", name, path);
+                }
+            }
+        }
+        return handle;
+    }
+
+    public void dropColumnFamily(@NonNull String name) {
+        synchronized (columnFamilies) {
+            ColumnFamilyHandle handle = columnFamilies.remove(name);
+            if (handle != null) {
+                UncheckedException.safe(() -> rocks.dropColumnFamily(handle));
+                handle.close();
+                ColumnFamilyOptions options = columnFamilyOptions.remove(name);
+                if (options != null) {
+                    options.close();
+                }
+                log.debug("Dropped column family {} from {}", name, path);
+            }
+        }
+    }
+
+    /**
+     * Commit a batch that may span several column families atomically.
+     */
+    public void write(@NonNull WriteBatch batch) {
+        UncheckedException.safe(() -> {
+            try (WriteOptions writeOptions = new WriteOptions()) {
+                rocks.write(writeOptions, batch);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        synchronized (columnFamilies) {
+            UncheckedException.safe(() -> {
+                try (FlushOptions options = new FlushOptions()) {
+                    options.setWaitForFlush(true);
+                    rocks.flush(options, Lists.newArrayList(columnFamilies.values()));
+                }
+            });
+            columnFamilies.values().forEach(ColumnFamilyHandle::close);
+            columnFamilies.clear();
+            rocks.close();
+            columnFamilyOptions.values().forEach(ColumnFamilyOptions::close);
+            columnFamilyOptions.clear();
+            dbOptions.close();
+        }
+    }
+
+    public static RocksDatabase open(
+            @NonNull String path,
+            @NonNull DBOptions dbOptions,
+            @NonNull Function<String, ColumnFamilyOptions> columnFamilyOptionsFactory
+    ) {
+        File dbDir = new File(path);
+        if (!dbDir.exists()) {
+            dbDir.mkdirs();
+        }
+        if (!dbDir.isDirectory()) {
+            UncheckedException.of(
+                    new IllegalAccessException("Invalid rocks db path: " + path)
+            );
+        }
+        return new RocksDatabase(path, dbOptions, columnFamilyOptionsFactory);
+    }
+}
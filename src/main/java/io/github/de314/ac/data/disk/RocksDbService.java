@@ -1,29 +1,79 @@
 package io.github.de314.ac.data.disk;
 
+import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.model.DataRow;
 import io.github.de314.ac.data.api.model.KVInfo;
 import io.github.de314.ac.data.api.model.NamespaceOptions;
+import io.github.de314.ac.data.api.model.RocksTuning;
 import io.github.de314.ac.data.utils.FileUtils;
+import io.github.de314.ac.data.utils.JsonUtils;
 import io.github.de314.ac.data.utils.UncheckedException;
-import io.github.de314.ac.data.utils.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.Striped;
 import lombok.NonNull;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
 import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
 import org.rocksdb.FlushOptions;
-import org.rocksdb.Options;
+import org.rocksdb.LRUCache;
+import org.rocksdb.LevelMetaData;
+import org.rocksdb.MergeOperator;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
-import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.Snapshot;
+import org.rocksdb.SstFileMetaData;
+import org.rocksdb.StringAppendOperator;
+import org.rocksdb.UInt64AddOperator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
-import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Slf4j
 public class RocksDbService {
 
     public static final String STORE_KIND = "RocksDB";
     public static final int MAX_CLOSE_WAIT_TIME_MS = 3_000;
+    public static final int KEY_LOCK_STRIPES = 64;
+    public static final double MEMTABLE_PREFIX_BLOOM_RATIO = 0.1;
+    public static final int PURGE_BATCH_SIZE = 1_000;
 
+    /** Merge operators are shared by every column family that uses them and live as long as the process. */
+    private static final MergeOperator UINT64_ADD = new UInt64AddOperator();
+    private static final MergeOperator STRING_APPEND = new StringAppendOperator(KeyValueStore.MERGE_DELIMITER);
+    private static final MergeOperator PATCH_APPEND = new StringAppendOperator(JsonUtils.PATCH_DELIMITER);
+    public static final String PROPERTY_ESTIMATE_NUM_KEYS = "rocksdb.estimate-num-keys";
+    public static final String PROPERTY_MEMTABLES_SIZE = "rocksdb.cur-size-all-mem-tables";
+    public static final String PROPERTY_TABLE_READERS_MEM = "rocksdb.estimate-table-readers-mem";
+    public static final String PROPERTY_BLOCK_CACHE_USAGE = "rocksdb.block-cache-usage";
+    public static final String PROPERTY_BLOCK_CACHE_PINNED_USAGE = "rocksdb.block-cache-pinned-usage";
+    public static final String PROPERTY_TOTAL_SST_FILES_SIZE = "rocksdb.total-sst-files-size";
 
     /*
     public static final String ROCKS_ARCHIVE_PATH = ROCKS_PATH + "/archive";
@@ -40,53 +90,275 @@ public class RocksDbService {
 
     private final NamespaceOptions namespaceOptions;
     private final AtomicBoolean isOpen;
-    private final AtomicInteger countDownLatch;
+    /**
+     * One party for the service plus one per open iterator. {@link #close()} deregisters the service and waits for
+     * the phase to advance, which happens when the last iterator is closed.
+     */
+    private final Phaser openIterators;
+    private final Map<RocksIterator, OpenIterator> iterators;
+    private final Striped<Lock> keyLocks;
+    /**
+     * Held shared with the key locks and exclusively by {@link #deleteRange}, so no locked write lands between the
+     * count of a range and its deletion.
+     */
+    private final ReadWriteLock rangeLock;
+    /** Exact number of keys, only maintained when {@link NamespaceOptions#isExactCount()} is set. */
+    private final AtomicLong keyCount;
 
-    private final RocksDB _rocks;
+    private final RocksDatabase database;
+    private final ColumnFamilyHandle columnFamily;
+    /**
+     * Keys with an expiry time, keyed by the 8 byte big-endian time followed by the key, only present when
+     * {@link NamespaceOptions#isTtl()} is set. Purging reads only the head of the index that is due.
+     */
+    private final ColumnFamilyHandle expiryIndex;
+    private final ValueEnvelope envelope;
+    /**
+     * Source of value versions, only present when {@link NamespaceOptions#isVersioned()} is set. It starts from the
+     * database sequence number, which advances at least once per stamped value, so versions keep increasing across
+     * restarts.
+     */
+    private final AtomicLong sequence;
+    /** A private database is closed and deleted with the namespace, a shared one only loses its column family. */
+    private final boolean ownsDatabase;
 
-    private RocksDbService(NamespaceOptions namespaceOptions) {
+    private RocksDbService(
+            NamespaceOptions namespaceOptions,
+            RocksDatabase database,
+            ColumnFamilyHandle columnFamily,
+            ColumnFamilyHandle expiryIndex,
+            boolean ownsDatabase
+    ) {
         this.namespaceOptions = namespaceOptions;
-        this.isOpen = new AtomicBoolean(false);
-        this.countDownLatch = new AtomicInteger();
-
-        Options rocksOptions = new Options();
-        rocksOptions.setCreateIfMissing(true);
-        rocksOptions.setErrorIfExists(false);
-        this._rocks = UncheckedException.safe(() -> {
-            RocksDB rocks = RocksDB.open(rocksOptions, namespaceOptions.getRocksPath());
-            isOpen.set(true);
-            return rocks;
-        }).orElse(null);
+        this.isOpen = new AtomicBoolean(true);
+        this.openIterators = new Phaser(1);
+        this.iterators = Maps.newConcurrentMap();
+        this.keyLocks = Striped.lock(KEY_LOCK_STRIPES);
+        this.rangeLock = new ReentrantReadWriteLock();
+        this.database = database;
+        this.columnFamily = columnFamily;
+        this.expiryIndex = expiryIndex;
+        this.ownsDatabase = ownsDatabase;
+        this.envelope = ValueEnvelope.of(namespaceOptions);
+        this.sequence = namespaceOptions.isVersioned() ? new AtomicLong(getRocks().getLatestSequenceNumber()) : null;
+        this.keyCount = namespaceOptions.isExactCount() ? new AtomicLong(countAll()) : null;
+    }
+
+    /**
+     * Database wide options: background jobs and, when a pool is given, the shared write buffer budget.
+     */
+    public static DBOptions createDbOptions(RocksTuning tuning, RocksMemoryPool memoryPool) {
+        DBOptions dbOptions = new DBOptions()
+                .setCreateIfMissing(true)
+                .setCreateMissingColumnFamilies(true)
+                .setErrorIfExists(false)
+                .setMaxBackgroundJobs(tuning.getMaxBackgroundJobs());
+        if (memoryPool != null) {
+            dbOptions.setWriteBufferManager(memoryPool.getWriteBufferManager());
+        }
+        return dbOptions;
+    }
+
+    /**
+     * Options of a column family of {@code namespaceOptions} with the merge operator of its {@code role}. Value column
+     * families append JSON patches to the stored document only if the namespace takes
+     * {@link NamespaceOptions#isPatches() patches}.
+     */
+    public static ColumnFamilyOptions createColumnFamilyOptions(ColumnFamilyRole role, NamespaceOptions namespaceOptions, Cache sharedCache) {
+        ColumnFamilyOptions options = createColumnFamilyOptions(namespaceOptions.getTuning(), sharedCache);
+        switch (role) {
+            case COUNTERS:
+                options.setMergeOperator(UINT64_ADD);
+                break;
+            case MERGED:
+                options.setMergeOperator(STRING_APPEND);
+                break;
+            case VALUES:
+                if (namespaceOptions.isPatches()) {
+                    options.setMergeOperator(PATCH_APPEND);
+                }
+                break;
+            default:
+                break;
+        }
+        return options;
+    }
+
+    /**
+     * @return the name of the column family holding the {@code role} data of this namespace.
+     */
+    private String columnFamilyName(ColumnFamilyRole role) {
+        return role.columnFamilyName(ownsDatabase ? null : namespaceOptions.getNamespace());
+    }
+
+    /**
+     * Per namespace table, memtable and compression options.
+     *
+     * @param sharedCache block cache shared with other namespaces, or {@code null} to size a private one from the tuning.
+     */
+    public static ColumnFamilyOptions createColumnFamilyOptions(RocksTuning tuning, Cache sharedCache) {
+        // table options hold their own references to the native cache and filter, so ours can be released right away
+        try (
+                Cache privateCache = sharedCache == null ? new LRUCache(tuning.getBlockCacheSize()) : null;
+                BloomFilter bloomFilter = tuning.getBloomFilterBitsPerKey() > 0
+                        ? new BloomFilter(tuning.getBloomFilterBitsPerKey(), false)
+                        : null
+        ) {
+            BlockBasedTableConfig tableConfig = new BlockBasedTableConfig()
+                    .setBlockSize(tuning.getBlockSize())
+                    .setBlockCache(sharedCache != null ? sharedCache : privateCache)
+                    .setCacheIndexAndFilterBlocks(tuning.isCacheIndexAndFilterBlocks());
+            if (bloomFilter != null) {
+                tableConfig.setFilterPolicy(bloomFilter);
+            }
+
+            ColumnFamilyOptions options = new ColumnFamilyOptions()
+                    .setTableFormatConfig(tableConfig)
+                    .setWriteBufferSize(tuning.getWriteBufferSize())
+                    .setMaxWriteBufferNumber(tuning.getMaxWriteBufferNumber());
+            if (!tuning.getCompressionPerLevel().isEmpty()) {
+                options.setCompressionPerLevel(tuning.getCompressionPerLevel());
+            }
+            if (tuning.getPrefixLength() > 0) {
+                options.useFixedLengthPrefixExtractor(tuning.getPrefixLength())
+                        .setMemtablePrefixBloomSizeRatio(MEMTABLE_PREFIX_BLOOM_RATIO);
+            }
+            return options;
+        }
     }
 
     private RocksDB getRocks() {
         if (!isOpen.get()) {
             throw new RuntimeException(String.format("Database is closed: %s@%s", namespaceOptions.getNamespace(), STORE_KIND));
         }
-        return _rocks;
+        return database.getRocks();
     }
 
+    public RocksDatabase getDatabase() {
+        return database;
+    }
+
+    /**
+     * @return an iterator over all keys in total order.
+     */
     public RocksIterator getIterator() {
-        RocksIterator it = getRocks().newIterator();
-        countDownLatch.getAndIncrement();
+        return getIterator(null, null, null, null);
+    }
+
+    public RocksIterator getIterator(byte[] upperBound, byte[] prefix) {
+        return getIterator(null, upperBound, prefix, null);
+    }
+
+    /**
+     * @param lowerBound inclusive bound enforced by RocksDB, {@code null} for none, which ends reverse iteration.
+     * @param upperBound exclusive bound enforced by RocksDB, {@code null} for none. The iterator becomes invalid at the
+     *                   bound instead of reading past it.
+     * @param prefix     the prefix of a prefix scan, or {@code null}. When it is at least as long as the tuned prefix
+     *                   extractor the iterator only visits keys sharing the seek key's prefix and can skip whole files.
+     * @param snapshot   the snapshot to read, {@code null} for the current state.
+     */
+    public RocksIterator getIterator(byte[] lowerBound, byte[] upperBound, byte[] prefix, Snapshot snapshot) {
+        return getIterator(columnFamily, lowerBound, upperBound, prefix, snapshot);
+    }
+
+    private RocksIterator getIterator(ColumnFamilyHandle columnFamily, byte[] lowerBound, byte[] upperBound, byte[] prefix, Snapshot snapshot) {
+        ReadOptions readOptions = new ReadOptions();
+        if (snapshot != null) {
+            readOptions.setSnapshot(snapshot);
+        }
+        if (lowerBound != null) {
+            readOptions.setIterateLowerBound(new Slice(lowerBound));
+        }
+        if (upperBound != null) {
+            readOptions.setIterateUpperBound(new Slice(upperBound));
+        }
+        int prefixLength = namespaceOptions.getTuning().getPrefixLength();
+        if (prefixLength > 0) {
+            if (prefix != null && prefix.length >= prefixLength) {
+                readOptions.setPrefixSameAsStart(true);
+            } else {
+                readOptions.setTotalOrderSeek(true);
+            }
+        }
+        // register before checking that the database is open, so close() either waits for the iterator or rejects it
+        openIterators.register();
+        RocksIterator it;
+        try {
+            it = getRocks().newIterator(columnFamily, readOptions);
+        } catch (RuntimeException e) {
+            openIterators.arriveAndDeregister();
+            closeReadOptions(readOptions);
+            throw e;
+        }
+        iterators.put(it, new OpenIterator(readOptions, log.isDebugEnabled() ? new Throwable("Iterator opened here") : null));
         return it;
     }
 
+    /**
+     * Close an iterator obtained from this service. Closing it again has no effect.
+     */
     public void closeIterator(RocksIterator it) {
+        OpenIterator open = iterators.remove(it);
+        if (open == null) {
+            return;
+        }
         it.close();
-        countDownLatch.getAndDecrement();
+        closeReadOptions(open.getReadOptions());
+        openIterators.arriveAndDeregister();
+    }
+
+    private static void closeReadOptions(ReadOptions readOptions) {
+        Slice lowerBound = readOptions.iterateLowerBound();
+        Slice upperBound = readOptions.iterateUpperBound();
+        readOptions.close();
+        if (lowerBound != null) {
+            lowerBound.close();
+        }
+        if (upperBound != null) {
+            upperBound.close();
+        }
     }
 
     public KVInfo getInfo() {
-        long size = FileUtils.directorySize(namespaceOptions.getPath());
+        long size = ownsDatabase
+                ? FileUtils.directorySize(namespaceOptions.getPath())
+                : getLongProperty(PROPERTY_TOTAL_SST_FILES_SIZE) + getLongProperty(PROPERTY_MEMTABLES_SIZE);
+        long memoryUsage = getLongProperty(PROPERTY_MEMTABLES_SIZE)
+                + getLongProperty(PROPERTY_TABLE_READERS_MEM)
+                + getLongProperty(PROPERTY_BLOCK_CACHE_PINNED_USAGE);
         return KVInfo.builder()
                 .kind(STORE_KIND)
                 .namespace(namespaceOptions.getNamespace())
                 .size(size)
                 .prettySize(FileUtils.toPrettySize(size))
+                .memoryUsage(memoryUsage)
+                .prettyMemoryUsage(FileUtils.toPrettySize(memoryUsage))
+                .blockCacheUsage(getLongProperty(PROPERTY_BLOCK_CACHE_USAGE))
                 .build();
     }
 
+    private long getLongProperty(String property) {
+        return UncheckedException.safe(() -> getRocks().getLongProperty(columnFamily, property))
+                .orElse(0L);
+    }
+
+    /**
+     * @return the maintained key count when exact counting is enabled, otherwise the result of a full key walk.
+     */
+    public long count() {
+        return keyCount != null ? keyCount.get() : countAll();
+    }
+
+    /**
+     * O(1) estimate of the number of keys, read from the {@value #PROPERTY_ESTIMATE_NUM_KEYS} property.
+     */
+    public long estimateCount() {
+        if (keyCount != null) {
+            return keyCount.get();
+        }
+        return getLongProperty(PROPERTY_ESTIMATE_NUM_KEYS);
+    }
+
     public long countAll() {
         long count = 0L;
         RocksIterator it = getIterator();
@@ -106,59 +378,506 @@ public class RocksDbService {
         return count;
     }
 
+    /**
+     * Count the keys in {@code [beginKey, endKey)} without materializing values. A {@code null} endKey is unbounded.
+     */
+    public long countRange(@NonNull byte[] beginKey, byte[] endKey) {
+        return countRange(beginKey, endKey, Long.MAX_VALUE);
+    }
+
+    public long countRange(@NonNull byte[] beginKey, byte[] endKey, long limit) {
+        long count = 0L;
+        RocksIterator it = getIterator(endKey, null);
+        log.trace("Obtained count iterator {}", it.hashCode());
+        try {
+            it.seek(beginKey);
+            while (count < limit && it.isValid()) {
+                count++;
+                it.next();
+            }
+        } finally {
+            log.trace("Closing count iterator {}", it.hashCode());
+            closeIterator(it);
+        }
+        return count;
+    }
+
+    /**
+     * @return the value of {@code key}, {@code null} when it is missing.
+     */
     public byte[] get(@NonNull byte[] key) {
-        return UncheckedException.safe(() -> getRocks().get(key))
-                .orElseGet(() -> new byte[0]);
+        return UncheckedException.safe(() -> getRocks().get(columnFamily, key))
+                .orElse(null);
+    }
+
+    /**
+     * @return the value of {@code key} as of {@code snapshot}, {@code null} when it is missing.
+     */
+    public byte[] get(@NonNull byte[] key, @NonNull Snapshot snapshot) {
+        return UncheckedException.safe(() -> {
+            try (ReadOptions readOptions = new ReadOptions().setSnapshot(snapshot)) {
+                return getRocks().get(columnFamily, readOptions, key);
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * Pin the current state of the database. Snapshots of a shared database cover all of its column families and
+     * keep overwritten values from being compacted away until {@link #releaseSnapshot(Snapshot) released}.
+     */
+    public Snapshot getSnapshot() {
+        return getRocks().getSnapshot();
+    }
+
+    public void releaseSnapshot(@NonNull Snapshot snapshot) {
+        if (isOpen.get()) {
+            getRocks().releaseSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Resolve all keys in a single native call. The result is aligned with {@code keys}, with {@code null} for misses.
+     */
+    public List<byte[]> multiGet(@NonNull List<byte[]> keys) {
+        return UncheckedException.safe(() -> getRocks().multiGetAsList(Collections.nCopies(keys.size(), columnFamily), keys))
+                .orElseGet(() -> Collections.nCopies(keys.size(), null));
     }
 
     public void put(@NonNull byte[] key, byte[] value) {
-        UncheckedException.safe(() -> getRocks().put(key, value));
+        if (locksWrites()) {
+            write(Collections.singletonList(key), Collections.singletonList(value));
+        } else {
+            UncheckedException.safe(() -> getRocks().put(columnFamily, key, value));
+        }
+    }
+
+    /**
+     * Commit aligned lists of keys and values, in their stored format, as one atomic batch. A {@code null} value
+     * deletes its key. Writes to namespaces with a ttl hold the key locks so that {@link #purgeExpired(long)} cannot
+     * delete a value just written, writes to versioned namespaces so that {@link #writeIfVersion} compares against
+     * the version being written.
+     */
+    public void write(@NonNull List<byte[]> keys, @NonNull List<byte[]> values) {
+        if (locksWrites()) {
+            withKeyLocks(keys, () -> writeLocked(keys, values));
+        } else {
+            writeBatch(keys, values);
+        }
+    }
+
+    /**
+     * Write {@code value}, or delete {@code key} when it is {@code null}, only if the current version of the key is
+     * {@code expectedVersion}. Missing and expired keys have {@link DataRow#NO_VERSION} and cannot be deleted.
+     *
+     * @return whether the key was written.
+     * @throws UnsupportedOperationException unless the namespace is {@link NamespaceOptions#isVersioned() versioned}.
+     */
+    public boolean writeIfVersion(@NonNull byte[] key, long expectedVersion, byte[] value) {
+        if (sequence == null) {
+            throw new UnsupportedOperationException("Namespace is not versioned: " + namespaceOptions.getNamespace());
+        }
+        List<byte[]> keys = Collections.singletonList(key);
+        boolean[] written = new boolean[1];
+        withKeyLocks(keys, () -> {
+            byte[] current = getRocks().get(columnFamily, key);
+            long version = current == null || envelope.isExpired(current, System.currentTimeMillis())
+                    ? DataRow.NO_VERSION
+                    : envelope.version(current);
+            written[0] = version == expectedVersion && (value != null || version != DataRow.NO_VERSION);
+            if (written[0]) {
+                writeLocked(keys, Collections.singletonList(value));
+            }
+        });
+        return written[0];
+    }
+
+    /**
+     * Replace the value of {@code key} with {@code value} only if it still is {@code expected}.
+     *
+     * @return whether the value was replaced.
+     */
+    public boolean compareAndSet(@NonNull byte[] key, byte[] expected, byte[] value) {
+        List<byte[]> keys = Collections.singletonList(key);
+        boolean[] written = new boolean[1];
+        withKeyLocks(keys, () -> {
+            written[0] = Arrays.equals(getRocks().get(columnFamily, key), expected);
+            if (written[0]) {
+                writeLocked(keys, Collections.singletonList(value));
+            }
+        });
+        return written[0];
+    }
+
+    private boolean locksWrites() {
+        return keyCount != null || expiryIndex != null || sequence != null || namespaceOptions.isPatches();
+    }
+
+    /**
+     * Write while holding the key locks of {@code keys}: stamp versions and maintain the exact count.
+     */
+    private void writeLocked(List<byte[]> keys, List<byte[]> values) {
+        if (sequence != null) {
+            values.stream()
+                    .filter(Objects::nonNull)
+                    .forEach(value -> envelope.stamp(value, sequence.incrementAndGet()));
+        }
+        if (keyCount == null) {
+            writeBatch(keys, values);
+            return;
+        }
+        List<byte[]> existing = multiGet(keys);
+        Map<ByteBuffer, Boolean> present = Maps.newHashMap();
+        long delta = 0L;
+        for (int i = 0; i < keys.size(); i++) {
+            ByteBuffer key = ByteBuffer.wrap(keys.get(i));
+            boolean wasPresent = present.getOrDefault(key, existing.get(i) != null);
+            boolean isPresent = values.get(i) != null;
+            delta += (isPresent ? 1 : 0) - (wasPresent ? 1 : 0);
+            present.put(key, isPresent);
+        }
+        writeBatch(keys, values);
+        keyCount.addAndGet(delta);
+    }
+
+    private void writeBatch(List<byte[]> keys, List<byte[]> values) {
+        UncheckedException.safe(() -> {
+            try (WriteBatch batch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+                stage(batch, keys, values);
+                getRocks().write(writeOptions, batch);
+            }
+        });
+    }
+
+    /**
+     * Stage writes against this namespace's column family in a batch that may span other namespaces of the same
+     * {@link RocksDatabase}. Such writes are committed elsewhere without the key locks that exact counters,
+     * versions, {@link #purgeExpired(long) purges} and patched documents written back rely on, so namespaces that
+     * {@link #locksWrites() lock their writes} cannot join.
+     */
+    public void appendTo(@NonNull WriteBatch batch, @NonNull List<byte[]> keys, @NonNull List<byte[]> values) {
+        if (locksWrites()) {
+            throw new UnsupportedOperationException(
+                    "Exact count, ttl, versioned and patch namespaces cannot join shared batches: " + namespaceOptions.getNamespace()
+            );
+        }
+        stage(batch, keys, values);
+    }
+
+    private void stage(WriteBatch batch, List<byte[]> keys, List<byte[]> values) {
+        UncheckedException.safe(() -> {
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] value = values.get(i);
+                if (value != null) {
+                    batch.put(columnFamily, keys.get(i), value);
+                    if (expiryIndex != null && envelope.expiresAt(value) != ValueEnvelope.NEVER) {
+                        batch.put(expiryIndex, Bytes.concat(Longs.toByteArray(envelope.expiresAt(value)), keys.get(i)), new byte[0]);
+                    }
+                } else {
+                    batch.delete(columnFamily, keys.get(i));
+                }
+            }
+        });
     }
 
     public boolean delete(@NonNull byte[] key) {
+        if (!locksWrites()) {
+            return deleteExisting(key);
+        }
+        boolean[] deleted = new boolean[1];
+        withKeyLocks(Collections.singletonList(key), () -> {
+            deleted[0] = deleteExisting(key);
+            if (deleted[0] && keyCount != null) {
+                keyCount.decrementAndGet();
+            }
+        });
+        return deleted[0];
+    }
+
+    private boolean deleteExisting(byte[] key) {
         return UncheckedException.safe(() -> {
-            byte[] value = getRocks().get(key);
-            getRocks().delete(key);
+            byte[] value = getRocks().get(columnFamily, key);
+            getRocks().delete(columnFamily, key);
             return value;
         }).isPresent();
     }
 
-    public void compact() {
-        UncheckedException.safe(() -> getRocks().compactRange());
+    /**
+     * Add {@code delta} to the counter {@code key} with a merge, which RocksDB folds into the stored count on read and
+     * compaction. Counters are 8 byte little-endian integers, negative deltas wrap around to a subtraction.
+     */
+    public void increment(@NonNull byte[] key, long delta) {
+        byte[] operand = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(delta).array();
+        UncheckedException.safe(() -> getRocks().merge(counters(), key, operand));
     }
 
-    public void close() {
+    public long getCounter(@NonNull byte[] key) {
+        return UncheckedException.safe(() -> getRocks().get(counters(), key))
+                .map(count -> ByteBuffer.wrap(count).order(ByteOrder.LITTLE_ENDIAN).getLong())
+                .orElse(0L);
+    }
+
+    /**
+     * Append {@code operand} to the merged value of {@code key}, separated by {@link KeyValueStore#MERGE_DELIMITER}.
+     */
+    public void merge(@NonNull byte[] key, @NonNull byte[] operand) {
+        UncheckedException.safe(() -> getRocks().merge(merged(), key, operand));
+    }
+
+    /**
+     * @return the merged value of {@code key}, {@code null} when nothing was merged.
+     */
+    public byte[] getMerged(@NonNull byte[] key) {
+        return UncheckedException.safe(() -> getRocks().get(merged(), key))
+                .orElse(null);
+    }
+
+    /**
+     * Append a JSON {@code patch} to the value of {@code key}, separated by {@link JsonUtils#PATCH_DELIMITER}. Readers
+     * merge the patches into the document; compaction only concatenates them, so the merged document has to be
+     * written back with {@link #compareAndSet}. The append holds the key lock so that it cannot land between the
+     * read and the write back.
+     *
+     * @throws UnsupportedOperationException unless the namespace takes {@link NamespaceOptions#isPatches() patches}.
+     */
+    public void appendPatch(@NonNull byte[] key, @NonNull byte[] patch) {
+        if (!namespaceOptions.isPatches()) {
+            throw new UnsupportedOperationException("Namespace does not take patches: " + namespaceOptions.getNamespace());
+        }
+        withKeyLocks(Collections.singletonList(key), () -> getRocks().merge(columnFamily, key, patch));
+    }
+
+    private ColumnFamilyHandle counters() {
+        return database.getOrCreateColumnFamily(columnFamilyName(ColumnFamilyRole.COUNTERS));
+    }
+
+    private ColumnFamilyHandle merged() {
+        return database.getOrCreateColumnFamily(columnFamilyName(ColumnFamilyRole.MERGED));
+    }
+
+    /**
+     * Delete the keys whose expiry time is at or before {@code now}. The expiry index is ordered by time, so only its
+     * due entries are read. An entry whose key was written again since no longer matches the stored expiry time and
+     * is dropped without touching the key.
+     *
+     * @return the number of keys deleted.
+     */
+    public long purgeExpired(long now) {
+        if (expiryIndex == null) {
+            return 0L;
+        }
+        long purged = 0L;
+        List<byte[]> entries = Lists.newArrayList();
+        RocksIterator it = getIterator(expiryIndex, null, Longs.toByteArray(now + 1), null, null);
+        log.trace("Obtained expiry iterator {}", it.hashCode());
+        try {
+            it.seekToFirst();
+            while (it.isValid()) {
+                entries.add(it.key());
+                it.next();
+                if (entries.size() >= PURGE_BATCH_SIZE || !it.isValid()) {
+                    purged += purgeEntries(entries);
+                    entries.clear();
+                }
+            }
+        } finally {
+            log.trace("Closing expiry iterator {}", it.hashCode());
+            closeIterator(it);
+        }
+        return purged;
+    }
+
+    private long purgeEntries(List<byte[]> entries) {
+        List<byte[]> keys = entries.stream()
+                .map(entry -> Arrays.copyOfRange(entry, Long.BYTES, entry.length))
+                .collect(Collectors.toList());
+        long[] purged = new long[1];
+        withKeyLocks(keys, () -> {
+            List<byte[]> stored = multiGet(keys);
+            try (WriteBatch batch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+                for (int i = 0; i < entries.size(); i++) {
+                    byte[] value = stored.get(i);
+                    if (value != null && envelope.expiresAt(value) == Longs.fromByteArray(entries.get(i))) {
+                        batch.delete(columnFamily, keys.get(i));
+                        purged[0]++;
+                    }
+                    batch.delete(expiryIndex, entries.get(i));
+                }
+                getRocks().write(writeOptions, batch);
+            }
+            if (keyCount != null) {
+                keyCount.addAndGet(-purged[0]);
+            }
+        });
+        return purged[0];
+    }
+
+    /**
+     * Run {@code job} while holding the striped locks for all {@code keys}. Locks are acquired in stripe order.
+     */
+    private void withKeyLocks(List<byte[]> keys, UncheckedException.ExceptionalRunnable job) {
+        List<Lock> locks = Lists.newArrayList(keyLocks.bulkGet(
+                keys.stream().map(ByteBuffer::wrap).collect(Collectors.toList())
+        ));
+        Lock shared = rangeLock.readLock();
+        shared.lock();
+        try {
+            locks.forEach(Lock::lock);
+            try {
+                UncheckedException.safe(job);
+            } finally {
+                Lists.reverse(locks).forEach(Lock::unlock);
+            }
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    /**
+     * Drop every key in {@code [beginKey, endKey)} with a single range tombstone and compact only that range.
+     * A {@code null} endKey extends the range past the last key. Locked writes wait while the range is counted and
+     * deleted, so the exact count matches the keys that were deleted.
+     *
+     * @return the number of deleted keys, not counting keys whose ttl had already passed.
+     */
+    public long deleteRange(@NonNull byte[] beginKey, byte[] endKey) {
+        RangeCount count;
+        byte[] rangeEnd;
+        Lock exclusive = rangeLock.writeLock();
+        exclusive.lock();
+        try {
+            rangeEnd = endKey != null ? endKey : successor(lastKey());
+            if (rangeEnd == null || Arrays.compareUnsigned(beginKey, rangeEnd) >= 0) {
+                return 0L;
+            }
+            count = countStored(beginKey, rangeEnd, System.currentTimeMillis());
+            if (count.getStored() > 0) {
+                UncheckedException.safe(() -> getRocks().deleteRange(columnFamily, beginKey, rangeEnd));
+                if (keyCount != null) {
+                    keyCount.addAndGet(-count.getStored());
+                }
+            }
+        } finally {
+            exclusive.unlock();
+        }
+        if (count.getStored() > 0) {
+            UncheckedException.safe(() -> getRocks().compactRange(columnFamily, beginKey, rangeEnd));
+        }
+        return count.getLive();
+    }
+
+    /**
+     * Count the stored keys of {@code [beginKey, endKey)} and, in namespaces with a ttl, read their values to tell
+     * which of them have not expired at {@code now}.
+     */
+    private RangeCount countStored(byte[] beginKey, byte[] endKey, long now) {
+        long stored = 0L;
+        long live = 0L;
+        RocksIterator it = getIterator(endKey, null);
         try {
-            RocksDB rocks = getRocks();
-            isOpen.set(false);
-
-            Timer timer = Timer.create();
-            while (countDownLatch.get() > 0 && timer.getDuration() < MAX_CLOSE_WAIT_TIME_MS) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            it.seek(beginKey);
+            while (it.isValid()) {
+                stored++;
+                if (expiryIndex == null || !envelope.isExpired(it.value(), now)) {
+                    live++;
                 }
+                it.next();
             }
-            if (countDownLatch.get() > 0) {
-                throw new RuntimeException("Could not close database. " + countDownLatch.get() + " open iterators");
+        } finally {
+            closeIterator(it);
+        }
+        return new RangeCount(stored, live);
+    }
+
+    private byte[] lastKey() {
+        RocksIterator it = getIterator();
+        try {
+            it.seekToLast();
+            return it.isValid() ? it.key() : null;
+        } finally {
+            closeIterator(it);
+        }
+    }
+
+    /**
+     * @return the smallest key that sorts strictly after {@code key}, i.e. an exclusive bound that includes it.
+     */
+    public static byte[] successor(byte[] key) {
+        return key != null ? Bytes.concat(key, new byte[] { 0 }) : null;
+    }
+
+    /**
+     * Keys in {@code (beginKey, endKey)} at which SST files of the namespace begin, in key order. They partition a
+     * range into pieces of comparable size without reading data. Keys still in memtables are not represented.
+     */
+    public List<byte[]> splitKeys(@NonNull byte[] beginKey, byte[] endKey) {
+        TreeSet<byte[]> keys = new TreeSet<>(Arrays::compareUnsigned);
+        for (LevelMetaData level : getRocks().getColumnFamilyMetaData(columnFamily).levels()) {
+            for (SstFileMetaData file : level.files()) {
+                byte[] key = file.smallestKey();
+                if (Arrays.compareUnsigned(key, beginKey) > 0 && (endKey == null || Arrays.compareUnsigned(key, endKey) < 0)) {
+                    keys.add(key);
+                }
+            }
+        }
+        return Lists.newArrayList(keys);
+    }
+
+    /**
+     * Write the memtables of the namespace to SST files.
+     */
+    public void flush() {
+        UncheckedException.safe(() -> {
+            try (FlushOptions options = new FlushOptions()) {
+                options.setWaitForFlush(true);
+                getRocks().flush(options, columnFamily);
             }
+        });
+    }
 
-            FlushOptions options = new FlushOptions();
-            options.setWaitForFlush(true);
-            rocks.flush(options);
-            ColumnFamilyHandle cf = rocks.getDefaultColumnFamily();
-            cf.close();
-            rocks.close();
-        } catch (RocksDBException e) {
-            e.printStackTrace();
+    public void compact() {
+        UncheckedException.safe(() -> getRocks().compactRange(columnFamily));
+    }
+
+    /**
+     * Reject new iterators and wait up to {@value #MAX_CLOSE_WAIT_TIME_MS} ms for open ones to be closed. With debug
+     * logging enabled the stack traces of iterators that were never closed are logged.
+     */
+    public void close() {
+        getRocks();
+        isOpen.set(false);
+
+        int phase = openIterators.arriveAndDeregister();
+        try {
+            openIterators.awaitAdvanceInterruptibly(phase, MAX_CLOSE_WAIT_TIME_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            // fall through to report the leaked iterators
+        }
+        if (!iterators.isEmpty()) {
+            iterators.values().stream()
+                    .map(OpenIterator::getOpenedAt)
+                    .filter(Objects::nonNull)
+                    .forEach(openedAt -> log.debug("Leaked iterator of {}", namespaceOptions.getNamespace(), openedAt));
+            throw new RuntimeException("Could not close database. " + iterators.size() + " open iterators");
+        }
+
+        if (ownsDatabase) {
+            database.close();
         }
     }
 
     public void destroy() {
         this.close();
-        boolean deleted = FileUtils.delete(namespaceOptions.getPath());
-        log.info("Destroyed {} => {} :: {}", namespaceOptions.getNamespace(), deleted, namespaceOptions.getPath());
+        if (ownsDatabase) {
+            boolean deleted = FileUtils.delete(namespaceOptions.getPath());
+            log.info("Destroyed {} => {} :: {}", namespaceOptions.getNamespace(), deleted, namespaceOptions.getPath());
+        } else {
+            for (ColumnFamilyRole role : ColumnFamilyRole.values()) {
+                database.dropColumnFamily(columnFamilyName(role));
+            }
+            log.info("Destroyed {} => column family of {}", namespaceOptions.getNamespace(), database.getPath());
+        }
     }
 
 //    public boolean backup(ArchiveStrategy archiveStrategy) {
@@ -189,18 +908,52 @@ public class RocksDbService {
 //    }
 
     public static RocksDbService create(NamespaceOptions options) {
-        File dbDir = new File(options.getRocksPath());
-        if (!dbDir.exists()) {
-            dbDir.mkdirs();
-        }
-        if (!dbDir.isDirectory()) {
-            UncheckedException.of(
-                    new IllegalAccessException("Invalid rocks db path: " + options)
-            );
-        }
-        Options rocksOptions = new Options();
-        rocksOptions.setCreateIfMissing(true);
-        rocksOptions.setErrorIfExists(false);
-        return new RocksDbService(options);
+        return create(options, (RocksMemoryPool) null);
+    }
+
+    /**
+     * Open the namespace as its own database under {@link NamespaceOptions#getRocksPath()}.
+     *
+     * @param memoryPool shared block cache and write buffer budget, or {@code null} for private caches.
+     */
+    public static RocksDbService create(NamespaceOptions options, RocksMemoryPool memoryPool) {
+        RocksTuning tuning = options.getTuning();
+        RocksDatabase database = RocksDatabase.open(
+                options.getRocksPath(),
+                createDbOptions(tuning, memoryPool),
+                name -> createColumnFamilyOptions(ColumnFamilyRole.of(name), options, memoryPool != null ? memoryPool.getBlockCache() : null)
+        );
+        ColumnFamilyHandle expiryIndex = options.isTtl()
+                ? database.getOrCreateColumnFamily(ColumnFamilyRole.EXPIRY_INDEX.columnFamilyName(null))
+                : null;
+        return new RocksDbService(options, database, database.getDefaultColumnFamily(), expiryIndex, true);
+    }
+
+    /**
+     * Bind the namespace to its own column family of a database shared with other namespaces.
+     *
+     * @throws IllegalArgumentException if the namespace name is reserved, see {@link ColumnFamilyRole#checkNamespace}.
+     */
+    public static RocksDbService create(NamespaceOptions options, RocksDatabase database) {
+        ColumnFamilyRole.checkNamespace(options.getNamespace());
+        ColumnFamilyHandle columnFamily = database.getOrCreateColumnFamily(ColumnFamilyRole.VALUES.columnFamilyName(options.getNamespace()));
+        ColumnFamilyHandle expiryIndex = options.isTtl()
+                ? database.getOrCreateColumnFamily(ColumnFamilyRole.EXPIRY_INDEX.columnFamilyName(options.getNamespace()))
+                : null;
+        return new RocksDbService(options, database, columnFamily, expiryIndex, false);
+    }
+
+    @Value
+    private static class RangeCount {
+        /** Keys in the range, expired ones included, as counted by the exact key count. */
+        long stored;
+        long live;
+    }
+
+    @Value
+    private static class OpenIterator {
+        ReadOptions readOptions;
+        /** Where the iterator was obtained, only captured with debug logging enabled. */
+        Throwable openedAt;
     }
 }
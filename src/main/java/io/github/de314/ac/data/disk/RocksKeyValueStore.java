@@ -1,156 +1,520 @@
 package io.github.de314.ac.data.disk;
 
 import io.github.de314.ac.data.api.Constants;
+import io.github.de314.ac.data.api.kv.AbstractKeyValueSnapshot;
 import io.github.de314.ac.data.api.kv.AbstractKeyValueStore;
+import io.github.de314.ac.data.api.key.KeyCodec;
+import io.github.de314.ac.data.api.key.KeyCodecs;
+import io.github.de314.ac.data.api.kv.AdaptedKeyValueStore;
+import io.github.de314.ac.data.api.kv.BinaryKeyValueStore;
+import io.github.de314.ac.data.api.kv.KeyValueSnapshot;
+import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.kv.SnapshotRegistry;
+import io.github.de314.ac.data.api.model.BinaryDataRow;
 import io.github.de314.ac.data.api.model.DataRow;
 import io.github.de314.ac.data.api.model.KVInfo;
 import io.github.de314.ac.data.api.model.NamespaceOptions;
 import io.github.de314.ac.data.api.model.ScanOptions;
-import io.github.de314.ac.data.api.service.DataAdapter;
-import io.github.de314.ac.data.utils.BaseSpliterator;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import io.github.de314.ac.data.api.model.ValueCodec;
 import io.github.de314.ac.data.utils.FileUtils;
+import io.github.de314.ac.data.utils.JsonUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.rocksdb.RocksDB;
-import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+/**
+ * A namespace stored in RocksDB. With {@link NamespaceOptions#isTtl()} every value is stored with its expiry time,
+ * expired values are skipped on read, and writes start a purge of due keys in the background at most once per
+ * {@value #PURGE_INTERVAL_MS} ms. With {@link NamespaceOptions#isVersioned()} every value is stored with the version
+ * conditional writes compare. With {@link NamespaceOptions#isPatches()} values are read with their pending patches
+ * merged in.
+ */
 @Slf4j
-public class RocksKeyValueStore extends AbstractKeyValueStore<byte[]> {
+public class RocksKeyValueStore extends AbstractKeyValueStore<byte[]> implements BinaryKeyValueStore<byte[]> {
 
     public static final String STORE_KIND = "RocksDB";
+    public static final long PURGE_INTERVAL_MS = 10_000L;
+    /** Every this many patches of a namespace, the patched document is rewritten with its patches merged in. */
+    public static final int PATCH_COLLAPSE_INTERVAL = 64;
+
+    private static final JsonUtils JSON_UTILS = new JsonUtils();
 
     static {
         RocksDB.loadLibrary();
     }
 
-    private final DataAdapter<String, byte[]> keyAdapter;
+    private final KeyCodec<String> keyCodec;
     private final RocksDbService rocksService;
+    private final SnapshotRegistry<RocksSnapshot> snapshots;
+    private final boolean ttl;
+    private final ValueEnvelope envelope;
+    private final AtomicLong nextPurgeAt;
+    private final boolean patches;
+    private final AtomicLong patchCount;
 
+    @Getter
     private final NamespaceOptions namespaceOptions;
 
     private RocksKeyValueStore(RocksDbService rocksService, NamespaceOptions namespaceOptions) {
         this.rocksService = rocksService;
         this.namespaceOptions = namespaceOptions;
-        this.keyAdapter = DataAdapter.stringConverter();
+        this.keyCodec = KeyCodecs.utf8();
+        this.snapshots = new SnapshotRegistry<>();
+        this.ttl = namespaceOptions.isTtl();
+        this.envelope = ValueEnvelope.of(namespaceOptions);
+        this.nextPurgeAt = new AtomicLong(System.currentTimeMillis() + PURGE_INTERVAL_MS);
+        this.patches = namespaceOptions.isPatches();
+        this.patchCount = new AtomicLong();
+        if (patches && (namespaceOptions.getCodec() != ValueCodec.JSON || !envelope.isEmpty() || namespaceOptions.isExactCount())) {
+            throw new IllegalArgumentException(
+                    "Patches require JSON values without ttl, versions or exact counts: " + namespaceOptions.getNamespace()
+            );
+        }
     }
 
     @Override
     public KVInfo getInfo() {
-        long size = FileUtils.directorySize(namespaceOptions.getPath());
-        return KVInfo.builder()
-                .kind(STORE_KIND)
-                .namespace(namespaceOptions.getNamespace())
-                .size(size)
-                .prettySize(FileUtils.toPrettySize(size))
-                .build();
+        return rocksService.getInfo();
     }
 
     @Override
     public long count() {
-        long count = 0L;
-        RocksIterator it = rocksService.getIterator();
-        log.trace("Obtained count iterator {}", it.hashCode());
-        try {
-            it.seekToFirst();
-            while (it.isValid()) {
-                count++;
-                it.next();
-            }
-        } catch (Throwable t) {
-            log.error("Failed count all", t);
-        } finally {
-            log.trace("Closing count iterator {}", it.hashCode());
-            rocksService.closeIterator(it);
+        if (ttl) {
+            return super.count(ScanOptions.all().build());
         }
-        return count;
+        return rocksService.count();
+    }
+
+    @Override
+    public long estimateCount() {
+        return rocksService.estimateCount();
+    }
+
+    @Override
+    public long count(ScanOptions options) {
+        if (ttl || options.hasFilter() || options.getSnapshot() != null) {
+            return super.count(options);
+        }
+        return rocksService.countRange(beginKey(options), endKey(options), options.getLimit(Long.MAX_VALUE));
     }
 
     @Override
     public Optional<byte[]> get(@NonNull String key) {
-        return Optional.ofNullable(rocksService.get(keyAdapter.ab(key)));
+        return get(keyCodec.encode(key));
     }
 
     @Override
-    public Stream<DataRow<byte[]>> stream(ScanOptions options) {
-        final String startKey = options.getStartKey();
+    public Optional<DataRow<byte[]>> getRow(@NonNull String key) {
+        byte[] stored = read(keyCodec.encode(key));
+        return Optional.ofNullable(fromStored(stored, System.currentTimeMillis()))
+                .map(value -> DataRow.of(key, value, envelope.version(stored), expiresAt(stored)));
+    }
 
-        final RocksIterator it = rocksService.getIterator();
-        log.trace("Obtained stream iterator {}", it.hashCode());
+    @Override
+    public List<DataRow<byte[]>> getAll(@NonNull Collection<String> keys) {
+        List<String> orderedKeys = new ArrayList<>(keys);
+        List<byte[]> values = rocksService.multiGet(
+                orderedKeys.stream().map(keyCodec::encode).collect(Collectors.toList())
+        );
+        List<DataRow<byte[]>> rows = new ArrayList<>(orderedKeys.size());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < orderedKeys.size(); i++) {
+            byte[] value = fromStored(values.get(i), now);
+            if (value != null) {
+                rows.add(DataRow.of(orderedKeys.get(i), value, envelope.version(values.get(i)), expiresAt(values.get(i))));
+            }
+        }
+        return rows;
+    }
 
-        if (startKey != null) {
-            it.seek(keyAdapter.ab(startKey));
-        } else {
-            it.seekToFirst();
+    /**
+     * A scan of a snapshot pins it until the stream is closed, so its lease cannot pass while iterators read it.
+     */
+    @Override
+    public Stream<DataRow<byte[]>> stream(ScanOptions options) {
+        if (options.getSnapshot() == null) {
+            return streamRange(options, null);
+        }
+        RocksSnapshot snapshot = snapshots.pin(options.getSnapshot());
+        try {
+            return streamRange(options, snapshot).onClose(() -> snapshots.unpin(snapshot.getId()));
+        } catch (RuntimeException e) {
+            snapshots.unpin(snapshot.getId());
+            throw e;
         }
+    }
 
-        if (!it.isValid()) {
-            log.trace("Closing stream iterator {}", it.hashCode());
-            rocksService.closeIterator(it);
-            return Stream.empty();
+    /**
+     * @throws IllegalArgumentException for a filter of JSON fields, which cannot read raw values.
+     */
+    private Stream<DataRow<byte[]>> streamRange(ScanOptions options, RocksSnapshot snapshot) {
+        if (options.hasFilter() && options.getFilter().getFields() != null) {
+            throw new IllegalArgumentException(
+                    "Field filters " + options.getFilter().getFields() + " need decoded values, scan a JSON or POJO view of " + namespaceOptions.getNamespace()
+            );
         }
+        return streamRange(
+                beginKey(options),
+                endKey(options),
+                options.getPrefix() != null ? keyCodec.encode(options.getPrefix()) : null,
+                snapshot,
+                options.getLimit(Long.MAX_VALUE),
+                options.getReverse(false),
+                options.getKeysOnly(false),
+                options.hasFilter() ? options::test : null,
+                (key, value, version) -> DataRow.of(keyCodec.decode(key), value, version)
+        );
+    }
+
+    @Override
+    public Stream<BinaryDataRow<byte[]>> stream(byte[] beginKey, byte[] endKey, long limit, boolean keysOnly) {
+        return streamRange(beginKey != null ? beginKey : new byte[0], endKey, null, null, limit, false, keysOnly, null, (key, value, version) -> BinaryDataRow.of(key, value));
+    }
 
-        AtomicLong count = new AtomicLong();
-        long limit = options.getLimit(Long.MAX_VALUE);
-        boolean keysOnly = options.getKeysOnly(false);
-
-        return StreamSupport.stream(
-                new BaseSpliterator<DataRow<byte[]>>() {
-                    @Override
-                    public boolean tryAdvance(Consumer<? super DataRow<byte[]>> action) {
-                        boolean hasMore = it.isValid();
-                        if (hasMore) {
-                            hasMore = false;
-                            String key = keyAdapter.ba(it.key());
-                            if (options.keyInRange(key) && count.getAndIncrement() < limit) {
-                                byte[] value = keysOnly ? null : it.value();
-                                action.accept(DataRow.of(key, value));
-                                it.next();
-                                hasMore = it.isValid();
-                            }
-                        }
-                        if (!hasMore) {
-                            log.trace("Closing stream iterator {}", it.hashCode());
-                            rocksService.closeIterator(it);
-                        }
-                        return hasMore;
-                    }
-                },
-                false
+    @Override
+    public Stream<BinaryDataRow<byte[]>> streamPrefix(@NonNull byte[] prefix, long limit, boolean keysOnly) {
+        return streamRange(prefix, BinaryKeyValueStore.prefixEnd(prefix), prefix, null, limit, false, keysOnly, null, (key, value, version) -> BinaryDataRow.of(key, value));
+    }
+
+    /**
+     * Iterate {@code [beginKey, endKey)}. The end is enforced by RocksDB as the iterator's upper bound, so keys are
+     * only decoded for rows that are returned. Parallel streams split the range and read it with one iterator per
+     * split. Closing the stream releases iterators of splits that were not read to the end.
+     *
+     * @param prefix   the prefix bounding the scan, if any, which lets RocksDB use prefix seek.
+     * @param snapshot the snapshot to read, {@code null} for the current state. Its lease is renewed as splits open.
+     * @param reverse  iterate from the end of the range backwards.
+     */
+    private <R> Stream<R> streamRange(
+            byte[] beginKey,
+            byte[] endKey,
+            byte[] prefix,
+            RocksSnapshot snapshot,
+            long limit,
+            boolean reverse,
+            boolean keysOnly,
+            Predicate<byte[]> valueFilter,
+            RowFactory<R> valueRowFactory
+    ) {
+        if (limit <= 0 || (endKey != null && Arrays.compareUnsigned(beginKey, endKey) >= 0)) {
+            return Stream.empty();
+        }
+        Predicate<byte[]> filter = valueFilter;
+        BiFunction<byte[], byte[], R> rowFactory = (key, value) -> valueRowFactory.create(key, value, DataRow.NO_VERSION);
+        if (patches) {
+            filter = valueFilter != null ? stored -> valueFilter.test(JSON_UTILS.foldPatches(stored)) : null;
+            rowFactory = (key, stored) -> valueRowFactory.create(key, JSON_UTILS.foldPatches(stored), DataRow.NO_VERSION);
+        } else if (!envelope.isEmpty()) {
+            long now = System.currentTimeMillis();
+            if (ttl) {
+                // expiry is checked on the stored value, so even keys only scans read values
+                filter = stored -> !envelope.isExpired(stored, now)
+                        && (valueFilter == null || valueFilter.test(envelope.unwrap(stored, now)));
+            } else if (valueFilter != null) {
+                filter = stored -> valueFilter.test(envelope.unwrap(stored, now));
+            }
+            rowFactory = (key, stored) -> stored != null
+                    ? valueRowFactory.create(key, envelope.unwrap(stored, now), envelope.version(stored))
+                    : valueRowFactory.create(key, null, DataRow.NO_VERSION);
+        }
+        Queue<RocksRangeSpliterator<R>> splits = new ConcurrentLinkedQueue<>();
+        Consumer<RocksRangeSpliterator<R>> onSplit = snapshot == null ? splits::add : split -> {
+            splits.add(split);
+            snapshots.acquire(snapshot.getId());
+        };
+        RocksRangeSpliterator<R> spliterator = new RocksRangeSpliterator<>(
+                rocksService, beginKey, endKey, prefix, snapshot != null ? snapshot.snapshot : null, limit, reverse,
+                keysOnly, filter, rowFactory, onSplit
         );
+        splits.add(spliterator);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> splits.forEach(RocksRangeSpliterator::close));
+    }
+
+    /**
+     * Pin the current state of the namespace. In shared store mode the snapshot pins the whole database.
+     */
+    @Override
+    public KeyValueSnapshot<byte[]> snapshot(@NonNull Duration lease) {
+        return snapshots.register(new RocksSnapshot(rocksService.getSnapshot()), lease);
     }
 
     @Override
     public void put(@NonNull String key, byte[] value) {
-        rocksService.put(keyAdapter.ab(key), value);
+        put(keyCodec.encode(key), value);
+    }
+
+    /**
+     * @throws UnsupportedOperationException unless the namespace was created with {@link NamespaceOptions#isTtl()}.
+     */
+    @Override
+    public void put(@NonNull String key, byte[] value, @NonNull Duration ttl) {
+        if (!this.ttl) {
+            throw new UnsupportedOperationException("Namespace does not store expiry times: " + namespaceOptions.getNamespace());
+        }
+        rocksService.put(keyCodec.encode(key), envelope.wrap(value, System.currentTimeMillis() + ttl.toMillis()));
+        maybePurge();
+    }
+
+    /**
+     * The version is compared and the value written under the key's lock, so conditional writes of a key are
+     * serialized with every other write of it.
+     *
+     * @throws UnsupportedOperationException unless the namespace was created with {@link NamespaceOptions#isVersioned()}.
+     */
+    @Override
+    public boolean putIfVersion(@NonNull String key, long expectedVersion, byte[] value) {
+        boolean written = rocksService.writeIfVersion(keyCodec.encode(key), expectedVersion, toStored(value));
+        maybePurge();
+        return written;
+    }
+
+    @Override
+    public void write(@NonNull WriteBatch<byte[]> batch) {
+        List<byte[]> keys = new ArrayList<>(batch.size());
+        List<byte[]> values = new ArrayList<>(batch.size());
+        for (WriteBatch.Operation<byte[]> op : batch.getOperations()) {
+            keys.add(keyCodec.encode(op.getKey()));
+            values.add(toStored(op.getValue()));
+        }
+        rocksService.write(keys, values);
+        maybePurge();
+    }
+
+    /**
+     * Commit batches for several namespaces atomically. All stores must be column families of the same database.
+     *
+     * @throws UnsupportedOperationException for namespaces that lock their writes, e.g. with a ttl or exact count.
+     */
+    public static void write(@NonNull Map<RocksKeyValueStore, WriteBatch<byte[]>> batches) {
+        RocksDatabase database = null;
+        try (org.rocksdb.WriteBatch rocksBatch = new org.rocksdb.WriteBatch()) {
+            for (Map.Entry<RocksKeyValueStore, WriteBatch<byte[]>> entry : batches.entrySet()) {
+                RocksKeyValueStore store = entry.getKey();
+                if (database == null) {
+                    database = store.rocksService.getDatabase();
+                } else if (database != store.rocksService.getDatabase()) {
+                    throw new IllegalArgumentException("Atomic batches require namespaces of one shared database");
+                }
+                List<byte[]> keys = new ArrayList<>(entry.getValue().size());
+                List<byte[]> values = new ArrayList<>(entry.getValue().size());
+                for (WriteBatch.Operation<byte[]> op : entry.getValue().getOperations()) {
+                    keys.add(store.keyCodec.encode(op.getKey()));
+                    values.add(store.toStored(op.getValue()));
+                }
+                store.rocksService.appendTo(rocksBatch, keys, values);
+            }
+            if (database != null) {
+                database.write(rocksBatch);
+            }
+        }
+        batches.keySet().forEach(RocksKeyValueStore::maybePurge);
+    }
+
+    /**
+     * Appends the patch to the stored document with a single merge write, which does not read the document. Patches
+     * are merged into it when it is read. Point reads and every {@value #PATCH_COLLAPSE_INTERVAL}th patch write the
+     * merged document back, so patches do not pile up in the stored value.
+     *
+     * @throws UnsupportedOperationException unless the namespace takes {@link NamespaceOptions#isPatches() patches}.
+     */
+    @Override
+    public void patch(@NonNull String key, @NonNull JsonNode patch) {
+        byte[] rawKey = keyCodec.encode(key);
+        rocksService.appendPatch(rawKey, JSON_UTILS.asBytes(patch));
+        if (patchCount.incrementAndGet() % PATCH_COLLAPSE_INTERVAL == 0) {
+            read(rawKey);
+        }
+    }
+
+    /**
+     * Counters are merged by RocksDB, so an increment is a single write that never reads the current count.
+     */
+    @Override
+    public void increment(@NonNull String key, long delta) {
+        rocksService.increment(keyCodec.encode(key), delta);
+    }
+
+    @Override
+    public long getCounter(@NonNull String key) {
+        return rocksService.getCounter(keyCodec.encode(key));
+    }
+
+    @Override
+    public void merge(@NonNull String key, @NonNull String operand) {
+        rocksService.merge(keyCodec.encode(key), operand.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Optional<String> getMerged(@NonNull String key) {
+        return Optional.ofNullable(rocksService.getMerged(keyCodec.encode(key)))
+                .map(merged -> new String(merged, StandardCharsets.UTF_8));
     }
 
     @Override
     public boolean delete(@NonNull String key) {
-        return rocksService.delete(keyAdapter.ab(key));
+        return rocksService.delete(keyCodec.encode(key));
+    }
+
+    /**
+     * @throws UnsupportedOperationException unless the namespace was created with {@link NamespaceOptions#isVersioned()}.
+     */
+    @Override
+    public boolean compareAndDelete(@NonNull String key, long expectedVersion) {
+        return rocksService.writeIfVersion(keyCodec.encode(key), expectedVersion, null);
+    }
+
+    @Override
+    public Optional<byte[]> get(@NonNull byte[] key) {
+        return Optional.ofNullable(fromStored(read(key), System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the stored value of {@code key}. Pending patches are merged into it and the merged document is written
+     * back, unless the key was written in the meantime.
+     */
+    private byte[] read(byte[] key) {
+        byte[] stored = rocksService.get(key);
+        if (!patches) {
+            return stored;
+        }
+        byte[] folded = JSON_UTILS.foldPatches(stored);
+        if (folded != stored) {
+            rocksService.compareAndSet(key, stored, folded);
+        }
+        return folded;
+    }
+
+    @Override
+    public void put(@NonNull byte[] key, byte[] value) {
+        rocksService.put(key, toStored(value));
+        maybePurge();
+    }
+
+    @Override
+    public boolean delete(@NonNull byte[] key) {
+        return rocksService.delete(key);
+    }
+
+    @Override
+    public long delete(byte[] beginKey, byte[] endKey) {
+        return rocksService.deleteRange(beginKey != null ? beginKey : new byte[0], endKey);
     }
 
     @Override
     public long delete(ScanOptions options) {
-        long result = super.delete(options);
-        rocksService.compact();
-        return result;
+        if (options.hasFilter()) {
+            return super.delete(options);
+        }
+        return rocksService.deleteRange(beginKey(options), endKey(options));
+    }
+
+    private long expiresAt(byte[] stored) {
+        long expiresAt = envelope.expiresAt(stored);
+        return expiresAt != ValueEnvelope.NEVER ? expiresAt : DataRow.NEVER_EXPIRES;
+    }
+
+    /**
+     * @return the inclusive lower bound of the scan as raw key bytes, the greater of its start key and prefix.
+     */
+    private byte[] beginKey(ScanOptions options) {
+        byte[] beginKey = options.getStartKey() != null ? keyCodec.encode(options.getStartKey()) : new byte[0];
+        if (options.getPrefix() != null) {
+            byte[] prefix = keyCodec.encode(options.getPrefix());
+            if (Arrays.compareUnsigned(prefix, beginKey) > 0) {
+                return prefix;
+            }
+        }
+        return beginKey;
+    }
+
+    /**
+     * @return the exclusive upper bound of the scan as raw key bytes, the lesser of its end key and the end of its
+     * prefix, or {@code null} when unbounded.
+     */
+    private byte[] endKey(ScanOptions options) {
+        byte[] endKey = options.getEndKey() != null ? RocksDbService.successor(keyCodec.encode(options.getEndKey())) : null;
+        if (options.getPrefix() != null) {
+            byte[] prefixEnd = BinaryKeyValueStore.prefixEnd(keyCodec.encode(options.getPrefix()));
+            if (prefixEnd != null && (endKey == null || Arrays.compareUnsigned(prefixEnd, endKey) < 0)) {
+                return prefixEnd;
+            }
+        }
+        return endKey;
+    }
+
+    private byte[] toStored(byte[] value) {
+        return envelope.wrap(value, ValueEnvelope.NEVER);
+    }
+
+    private byte[] fromStored(byte[] stored, long now) {
+        return patches ? JSON_UTILS.foldPatches(stored) : envelope.unwrap(stored, now);
+    }
+
+    /**
+     * Delete the keys whose ttl has passed now instead of waiting for the next background purge.
+     *
+     * @return the number of keys deleted.
+     */
+    public long purgeExpired() {
+        nextPurgeAt.set(System.currentTimeMillis() + PURGE_INTERVAL_MS);
+        return rocksService.purgeExpired(System.currentTimeMillis());
+    }
+
+    private void maybePurge() {
+        long now = System.currentTimeMillis();
+        long purgeAt = nextPurgeAt.get();
+        if (ttl && now >= purgeAt && nextPurgeAt.compareAndSet(purgeAt, now + PURGE_INTERVAL_MS)) {
+            ForkJoinPool.commonPool().execute(() -> {
+                try {
+                    long purged = rocksService.purgeExpired(now);
+                    log.debug("Purged {} expired keys of {}", purged, namespaceOptions.getNamespace());
+                } catch (RuntimeException e) {
+                    log.warn("Failed to purge expired keys of {}", namespaceOptions.getNamespace(), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Write buffered writes to SST files, e.g. before a backup or a large parallel scan.
+     */
+    public void flush() {
+        rocksService.flush();
     }
 
     @Override
     public void close() {
+        snapshots.closeAll();
         rocksService.close();
     }
 
     public void destroy() {
-        this.close();
-        boolean deleted = FileUtils.delete(namespaceOptions.getPath());
-        log.info("Destroyed {} => {} :: {}", namespaceOptions.getNamespace(), deleted, namespaceOptions.getPath());
+        snapshots.closeAll();
+        rocksService.destroy();
     }
 
 //    public boolean backup(ArchiveStrategy archiveStrategy) {
@@ -180,13 +544,55 @@ public class RocksKeyValueStore extends AbstractKeyValueStore<byte[]> {
 //        return success && isOpen.get();
 //    }
 
+    private class RocksSnapshot extends AbstractKeyValueSnapshot<byte[]> {
+
+        private final Snapshot snapshot;
+
+        private RocksSnapshot(Snapshot snapshot) {
+            super(RocksKeyValueStore.this);
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Optional<byte[]> get(@NonNull String key) {
+            snapshots.acquire(getId());
+            return Optional.ofNullable(fromStored(rocksService.get(keyCodec.encode(key), snapshot), System.currentTimeMillis()));
+        }
+
+        @Override
+        protected void release() {
+            snapshots.remove(getId());
+            rocksService.releaseSnapshot(snapshot);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowFactory<R> {
+        R create(byte[] key, byte[] value, long version);
+    }
+
     public static RocksKeyValueStore create(String namespace) {
         return create(NamespaceOptions.create(namespace));
     }
 
+    public static <ValueT> KeyValueStore<ValueT> create(String namespace, Class<ValueT> modelClass) {
+        return AdaptedKeyValueStore.createPojoStore(create(namespace), modelClass);
+    }
+
     public static RocksKeyValueStore create(NamespaceOptions options) {
+        return create(options, (RocksMemoryPool) null);
+    }
+
+    public static RocksKeyValueStore create(NamespaceOptions options, RocksMemoryPool memoryPool) {
+        return new RocksKeyValueStore(
+                RocksDbService.create(options, memoryPool),
+                options
+        );
+    }
+
+    public static RocksKeyValueStore create(NamespaceOptions options, RocksDatabase database) {
         return new RocksKeyValueStore(
-                RocksDbService.create(options),
+                RocksDbService.create(options, database),
                 options
         );
     }
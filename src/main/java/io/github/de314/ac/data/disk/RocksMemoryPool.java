@@ -0,0 +1,65 @@
+package io.github.de314.ac.data.disk;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.Cache;
+import org.rocksdb.ClockCache;
+import org.rocksdb.LRUCache;
+import org.rocksdb.RocksDB;
+import org.rocksdb.WriteBufferManager;
+
+/**
+ * Process wide memory budget shared by every namespace opened through a {@link RockDBDataStoreService}.
+ *
+ * All namespaces read through one block cache and charge their memtables to that same cache through a
+ * {@link WriteBufferManager}, so total RocksDB memory stays bounded by {@link #getMemoryBudget()} regardless
+ * of how many namespaces are open.
+ */
+@Slf4j
+@Getter
+public class RocksMemoryPool implements AutoCloseable {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    /** Share of the budget that memtables may hold before flushes are forced. */
+    public static final double DEFAULT_WRITE_BUFFER_RATIO = 0.25;
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    public enum CacheKind {
+        LRU,
+        CLOCK
+    }
+
+    private final long memoryBudget;
+    private final long writeBufferBudget;
+    private final Cache blockCache;
+    private final WriteBufferManager writeBufferManager;
+
+    private RocksMemoryPool(long memoryBudget, double writeBufferRatio, CacheKind cacheKind) {
+        this.memoryBudget = memoryBudget;
+        this.writeBufferBudget = (long) (memoryBudget * writeBufferRatio);
+        this.blockCache = cacheKind == CacheKind.CLOCK ? new ClockCache(memoryBudget) : new LRUCache(memoryBudget);
+        this.writeBufferManager = new WriteBufferManager(writeBufferBudget, blockCache);
+        log.info("Created rocks memory pool: budget={} writeBuffers={} cache={}", memoryBudget, writeBufferBudget, cacheKind);
+    }
+
+    @Override
+    public void close() {
+        writeBufferManager.close();
+        blockCache.close();
+    }
+
+    public static RocksMemoryPool create() {
+        return create(DEFAULT_MEMORY_BUDGET);
+    }
+
+    public static RocksMemoryPool create(long memoryBudget) {
+        return create(memoryBudget, DEFAULT_WRITE_BUFFER_RATIO, CacheKind.LRU);
+    }
+
+    public static RocksMemoryPool create(long memoryBudget, double writeBufferRatio, CacheKind cacheKind) {
+        return new RocksMemoryPool(memoryBudget, writeBufferRatio, cacheKind);
+    }
+}
@@ -0,0 +1,180 @@
+package io.github.de314.ac.data.disk;
+
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Spliterator over {@code [beginKey, endKey)} of a namespace. Unlimited scans split at SST file boundaries and every
+ * split opens its own iterator on first use, so parallel streams read disjoint key ranges concurrently. Reverse scans
+ * walk backwards from the end of the range and do not split.
+ */
+@Slf4j
+class RocksRangeSpliterator<R> implements Spliterator<R> {
+
+    private final RocksDbService rocksService;
+    private final byte[] endKey;
+    private final byte[] prefix;
+    private final Snapshot snapshot;
+    private final long limit;
+    private final boolean reverse;
+    private final boolean keysOnly;
+    private final Predicate<byte[]> filter;
+    private final BiFunction<byte[], byte[], R> rowFactory;
+    /** Called with every split so the stream can close iterators it did not exhaust. */
+    private final Consumer<RocksRangeSpliterator<R>> onSplit;
+
+    private byte[] beginKey;
+    /** Candidate split keys inside the range, loaded on the first split attempt. */
+    private List<byte[]> splitKeys;
+    private long estimatedSize;
+    private long count;
+    private RocksIterator it;
+    private boolean done;
+
+    RocksRangeSpliterator(
+            RocksDbService rocksService,
+            byte[] beginKey,
+            byte[] endKey,
+            byte[] prefix,
+            Snapshot snapshot,
+            long limit,
+            boolean reverse,
+            boolean keysOnly,
+            Predicate<byte[]> filter,
+            BiFunction<byte[], byte[], R> rowFactory,
+            Consumer<RocksRangeSpliterator<R>> onSplit
+    ) {
+        this.rocksService = rocksService;
+        this.beginKey = beginKey;
+        this.endKey = endKey;
+        this.prefix = prefix;
+        this.snapshot = snapshot;
+        this.limit = limit;
+        this.reverse = reverse;
+        this.keysOnly = keysOnly;
+        this.filter = filter;
+        this.rowFactory = rowFactory;
+        this.onSplit = onSplit;
+        this.estimatedSize = Math.min(limit, rocksService.estimateCount());
+    }
+
+    private RocksRangeSpliterator(RocksRangeSpliterator<R> parent, byte[] endKey, List<byte[]> splitKeys, long estimatedSize) {
+        this.rocksService = parent.rocksService;
+        this.beginKey = parent.beginKey;
+        this.endKey = endKey;
+        this.prefix = parent.prefix;
+        this.snapshot = parent.snapshot;
+        this.limit = parent.limit;
+        this.reverse = parent.reverse;
+        this.keysOnly = parent.keysOnly;
+        this.filter = parent.filter;
+        this.rowFactory = parent.rowFactory;
+        this.onSplit = parent.onSplit;
+        this.splitKeys = splitKeys;
+        this.estimatedSize = estimatedSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        if (done) {
+            return false;
+        }
+        if (it == null) {
+            open();
+        }
+        boolean readValues = !keysOnly || filter != null;
+        while (it.isValid() && count < limit) {
+            byte[] key = it.key();
+            byte[] value = readValues ? it.value() : null;
+            if (reverse) {
+                it.prev();
+            } else {
+                it.next();
+            }
+            if (filter == null || filter.test(value)) {
+                count++;
+                action.accept(rowFactory.apply(key, keysOnly ? null : value));
+                if (!it.isValid() || count >= limit) {
+                    close();
+                }
+                return true;
+            }
+        }
+        close();
+        return false;
+    }
+
+    /**
+     * Split off the first half of the remaining split keys. A limited scan never splits, its limit is global.
+     */
+    @Override
+    public Spliterator<R> trySplit() {
+        if (it != null || done || reverse || limit != Long.MAX_VALUE) {
+            return null;
+        }
+        if (splitKeys == null) {
+            splitKeys = rocksService.splitKeys(beginKey, endKey);
+        }
+        if (splitKeys.isEmpty()) {
+            return null;
+        }
+        int mid = splitKeys.size() / 2;
+        byte[] splitKey = splitKeys.get(mid);
+        long half = estimatedSize / 2;
+        RocksRangeSpliterator<R> first = new RocksRangeSpliterator<>(this, splitKey, splitKeys.subList(0, mid), half);
+        beginKey = splitKey;
+        splitKeys = splitKeys.subList(mid + 1, splitKeys.size());
+        estimatedSize -= half;
+        onSplit.accept(first);
+        return first;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+
+    private void open() {
+        if (reverse) {
+            // prefix seek cannot cross into the prefix of the exclusive end, so reverse scans seek in total order
+            it = rocksService.getIterator(beginKey.length > 0 ? beginKey : null, null, null, snapshot);
+            log.trace("Obtained reverse stream iterator {}", it.hashCode());
+            if (endKey != null) {
+                it.seekForPrev(endKey);
+                if (it.isValid() && Arrays.equals(it.key(), endKey)) {
+                    it.prev();
+                }
+            } else {
+                it.seekToLast();
+            }
+        } else {
+            it = rocksService.getIterator(null, endKey, prefix, snapshot);
+            log.trace("Obtained stream iterator {}", it.hashCode());
+            it.seek(beginKey);
+        }
+    }
+
+    void close() {
+        if (!done) {
+            done = true;
+            if (it != null) {
+                log.trace("Closing stream iterator {}", it.hashCode());
+                rocksService.closeIterator(it);
+                it = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.de314.ac.data.disk;
+
+import io.github.de314.ac.data.api.model.DataRow;
+import io.github.de314.ac.data.api.model.NamespaceOptions;
+import com.google.common.primitives.Longs;
+
+import java.util.Arrays;
+
+/**
+ * Stored format of values in namespaces that keep metadata with every value: the version when
+ * {@link NamespaceOptions#isVersioned() versioned}, then the expiry time in epoch millis, {@code 0} for none, with
+ * {@link NamespaceOptions#isTtl() ttl}, each as 8 big-endian bytes, followed by the value. Other namespaces store values
+ * as is.
+ */
+final class ValueEnvelope {
+
+    static final long NEVER = 0L;
+
+    private final boolean versioned;
+    private final boolean ttl;
+    private final int headerLength;
+
+    private ValueEnvelope(boolean versioned, boolean ttl) {
+        this.versioned = versioned;
+        this.ttl = ttl;
+        this.headerLength = (versioned ? Long.BYTES : 0) + (ttl ? Long.BYTES : 0);
+    }
+
+    static ValueEnvelope of(NamespaceOptions options) {
+        return new ValueEnvelope(options.isVersioned(), options.isTtl());
+    }
+
+    boolean isEmpty() {
+        return headerLength == 0;
+    }
+
+    /**
+     * @return the stored form of {@code value}, without a version until it is {@link #stamp(byte[], long) stamped}.
+     */
+    byte[] wrap(byte[] value, long expiresAt) {
+        if (value == null || headerLength == 0) {
+            return value;
+        }
+        byte[] stored = new byte[headerLength + value.length];
+        if (ttl) {
+            System.arraycopy(Longs.toByteArray(expiresAt), 0, stored, expiryOffset(), Long.BYTES);
+        }
+        System.arraycopy(value, 0, stored, headerLength, value.length);
+        return stored;
+    }
+
+    /**
+     * Set the version of a {@link #wrap(byte[], long) wrapped} value in place.
+     */
+    void stamp(byte[] stored, long version) {
+        System.arraycopy(Longs.toByteArray(version), 0, stored, 0, Long.BYTES);
+    }
+
+    long version(byte[] stored) {
+        return versioned ? readLong(stored, 0) : DataRow.NO_VERSION;
+    }
+
+    long expiresAt(byte[] stored) {
+        return ttl ? readLong(stored, expiryOffset()) : NEVER;
+    }
+
+    boolean isExpired(byte[] stored, long now) {
+        long expiresAt = expiresAt(stored);
+        return expiresAt != NEVER && expiresAt <= now;
+    }
+
+    /**
+     * @return the value of {@code stored}, or {@code null} when it is missing or expired at {@code now}.
+     */
+    byte[] unwrap(byte[] stored, long now) {
+        if (stored == null || headerLength == 0) {
+            return stored;
+        }
+        if (isExpired(stored, now)) {
+            return null;
+        }
+        return Arrays.copyOfRange(stored, headerLength, stored.length);
+    }
+
+    private int expiryOffset() {
+        return versioned ? Long.BYTES : 0;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return Longs.fromBytes(
+                bytes[offset], bytes[offset + 1], bytes[offset + 2], bytes[offset + 3],
+                bytes[offset + 4], bytes[offset + 5], bytes[offset + 6], bytes[offset + 7]
+        );
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.de314.ac.data.memory;
+
+import io.github.de314.ac.data.api.model.DataRow;
+import io.github.de314.ac.data.api.model.KVInfo;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Lists;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A {@link MapKeyValueStore} capped by entry count or weight that evicts according to an {@link EvictionPolicy},
+ * so it can be used as a cache without growing the heap unbounded.
+ *
+ * Point reads count as hits or misses and feed the policy; scans read the map directly and do not. Reads are
+ * recorded in a {@link ReadBuffer} and replayed to the policy by writes or by the reader that fills a stripe, if the
+ * policy lock is free, so reads never wait for it.
+ */
+@Slf4j
+public class BoundedMapKeyValueStore<V> extends MapKeyValueStore<V> {
+
+    public static final String STORE_KIND = "BoundedMemoryMap";
+
+    private final String namespace;
+    private final BoundedStoreOptions options;
+    private final long capacity;
+    /** Only accessed while holding {@link #policyLock}. */
+    private final EvictionPolicy policy;
+    private final Lock policyLock = new ReentrantLock();
+    private final ReadBuffer readBuffer = new ReadBuffer();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public BoundedMapKeyValueStore(String namespace, @NonNull BoundedStoreOptions options) {
+        super(namespace);
+        this.namespace = namespace;
+        this.options = options;
+        this.capacity = options.getCapacity();
+        this.policy = EvictionPolicy.create(options.getPolicy(), capacity);
+    }
+
+    @Override
+    public KVInfo getInfo() {
+        long size = count();
+        long weightedSize = withPolicy(policy::getWeightedSize);
+        long memoryUsage = options.getMaxWeight() > 0 ? weightedSize : 0L;
+        return KVInfo.builder()
+                .kind(STORE_KIND)
+                .namespace(namespace)
+                .size(size)
+                .prettySize(String.format("%,d records", size))
+                .memoryUsage(memoryUsage)
+                .prettyMemoryUsage(String.format("%,d bytes", memoryUsage))
+                .hitCount(hitCount.sum())
+                .missCount(missCount.sum())
+                .evictionCount(evictionCount.sum())
+                .build();
+    }
+
+    @Override
+    public Optional<V> get(@NonNull String key) {
+        Optional<V> value = super.get(key);
+        if (value.isPresent()) {
+            hitCount.increment();
+            if (readBuffer.offer(key) && policyLock.tryLock()) {
+                try {
+                    readBuffer.drain(policy::onRead);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+        } else {
+            missCount.increment();
+        }
+        return value;
+    }
+
+    @Override
+    protected void put(String key, V value, long expiresAt) {
+        expireDue();
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        List<RemovalNotification<String, Object>> evicted = Lists.newArrayList();
+        sharedWrite(() -> withPolicy(() -> {
+            insert(key, value, expiresAt);
+            evict(policy.onWrite(key, options.weigh(key, value)), evicted);
+            return null;
+        }));
+        notifyEvictions(evicted);
+    }
+
+    @Override
+    protected boolean update(String key, Predicate<DataRow<V>> condition, Function<DataRow<V>, V> change) {
+        AtomicReference<V> next = new AtomicReference<>();
+        List<RemovalNotification<String, Object>> evicted = Lists.newArrayList();
+        boolean updated = sharedWrite(() -> withPolicy(() -> {
+            boolean written = super.update(key, condition, row -> {
+                V value = change.apply(row);
+                next.set(value);
+                return value;
+            });
+            if (written && next.get() == null) {
+                policy.onRemove(key);
+            } else if (written) {
+                evict(policy.onWrite(key, options.weigh(key, next.get())), evicted);
+            }
+            return written;
+        }));
+        notifyEvictions(evicted);
+        return updated;
+    }
+
+    @Override
+    public boolean delete(@NonNull String key) {
+        return sharedWrite(() -> withPolicy(() -> {
+            policy.onRemove(key);
+            return remove(key) != null;
+        }));
+    }
+
+    @Override
+    protected V expire(String key, long now) {
+        return withPolicy(() -> {
+            V expired = super.expire(key, now);
+            if (expired != null) {
+                policy.onRemove(key);
+            }
+            return expired;
+        });
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Run {@code job} holding the policy lock, after replaying the buffered reads so evictions see them.
+     */
+    private <T> T withPolicy(Supplier<T> job) {
+        policyLock.lock();
+        try {
+            readBuffer.drain(policy::onRead);
+            return job.get();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private void evict(List<String> victims, List<RemovalNotification<String, Object>> evicted) {
+        for (String victim : victims) {
+            V removed = remove(victim);
+            if (removed != null) {
+                evicted.add(RemovalNotification.create(victim, removed, RemovalCause.SIZE));
+            }
+        }
+    }
+
+    private void notifyEvictions(List<RemovalNotification<String, Object>> evicted) {
+        evictionCount.add(evicted.size());
+        evicted.forEach(this::notifyEviction);
+    }
+
+    private void notifyEviction(RemovalNotification<String, Object> notification) {
+        for (RemovalListener<String, Object> listener : options.getEvictionListeners()) {
+            try {
+                listener.onRemoval(notification);
+            } catch (RuntimeException e) {
+                log.warn("Eviction listener failed for {}::{}", namespace, notification.getKey(), e);
+            }
+        }
+    }
+
+    public static <ValueT> BoundedMapKeyValueStore<ValueT> create(String namespace, BoundedStoreOptions options) {
+        return new BoundedMapKeyValueStore<>(namespace, options);
+    }
+}
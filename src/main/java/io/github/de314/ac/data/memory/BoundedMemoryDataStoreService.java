@@ -0,0 +1,42 @@
+package io.github.de314.ac.data.memory;
+
+import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.service.AbstractDataStoreService;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * In memory stores that evict once they reach the bounds of their {@link BoundedStoreOptions}.
+ */
+public class BoundedMemoryDataStoreService extends AbstractDataStoreService {
+
+    @Getter
+    private final BoundedStoreOptions defaultOptions;
+
+    public BoundedMemoryDataStoreService(@NonNull BoundedStoreOptions defaultOptions) {
+        super(BoundedMapKeyValueStore.STORE_KIND);
+        this.defaultOptions = defaultOptions;
+    }
+
+    /**
+     * Bounds for a newly created namespace. Override to size namespaces individually.
+     */
+    protected BoundedStoreOptions getStoreOptions(String namespace) {
+        return defaultOptions;
+    }
+
+    @Override
+    protected KeyValueStore<JsonNode> create(String namespace) {
+        return BoundedMapKeyValueStore.create(namespace, getStoreOptions(namespace));
+    }
+
+    @Override
+    protected <ValueT> KeyValueStore<ValueT> create(String namespace, Class<ValueT> modelClass) {
+        return BoundedMapKeyValueStore.create(namespace, getStoreOptions(namespace));
+    }
+
+    public static BoundedMemoryDataStoreService create(BoundedStoreOptions defaultOptions) {
+        return new BoundedMemoryDataStoreService(defaultOptions);
+    }
+}
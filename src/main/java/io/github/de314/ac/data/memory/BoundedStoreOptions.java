@@ -0,0 +1,103 @@
+package io.github.de314.ac.data.memory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BinaryNode;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Capacity and eviction settings of a {@link BoundedMapKeyValueStore}. At most one of {@link #maxEntries} and
+ * {@link #maxWeight} may be set; with neither the store is unbounded but still records statistics.
+ */
+@Value
+@Builder(toBuilder = true)
+public class BoundedStoreOptions {
+
+    /** Approximate size of a scalar or an empty container in a JSON tree. */
+    private static final int NODE_BYTES = 16;
+
+    private final long maxEntries;
+    /**
+     * Upper bound on the summed {@link #weigher} weights. The default weigher approximates the bytes of strings,
+     * byte arrays and JSON trees, and rejects POJOs.
+     */
+    private final long maxWeight;
+    @Builder.Default
+    private final Weigher<String, Object> weigher = BoundedStoreOptions::approximateBytes;
+    @Builder.Default
+    private final EvictionPolicy.Kind policy = EvictionPolicy.Kind.TINY_LFU;
+    /** Notified with {@link com.google.common.cache.RemovalCause#SIZE} after an entry is evicted. */
+    @Singular
+    private final List<RemovalListener<String, Object>> evictionListeners;
+
+    public long getCapacity() {
+        if (maxEntries > 0 && maxWeight > 0) {
+            throw new IllegalArgumentException("Only one of maxEntries and maxWeight may be set");
+        }
+        return maxEntries > 0 ? maxEntries : maxWeight > 0 ? maxWeight : Long.MAX_VALUE;
+    }
+
+    public long weigh(String key, Object value) {
+        return maxWeight > 0 ? weigher.weigh(key, value) : 1L;
+    }
+
+    public static BoundedStoreOptions maxEntries(long maxEntries) {
+        return BoundedStoreOptions.builder().maxEntries(maxEntries).build();
+    }
+
+    public static BoundedStoreOptions maxWeight(long maxWeight) {
+        return BoundedStoreOptions.builder().maxWeight(maxWeight).build();
+    }
+
+    /**
+     * Rough heap footprint of an entry: two bytes per key char plus the value's bytes, chars or, for a
+     * {@link JsonNode}, a walk of its tree that sums field names, text and a fixed cost per node without serializing
+     * it. Other values cannot be sized cheaply, so stores of POJOs bounded by {@link #maxWeight} need a
+     * {@link #weigher}.
+     *
+     * @throws IllegalArgumentException for values of any other type.
+     */
+    public static int approximateBytes(String key, Object value) {
+        int valueBytes;
+        if (value == null) {
+            valueBytes = 0;
+        } else if (value instanceof byte[]) {
+            valueBytes = ((byte[]) value).length;
+        } else if (value instanceof CharSequence) {
+            valueBytes = 2 * ((CharSequence) value).length();
+        } else if (value instanceof JsonNode) {
+            valueBytes = approximateBytes((JsonNode) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            valueBytes = NODE_BYTES;
+        } else {
+            throw new IllegalArgumentException("No weigher set for " + value.getClass().getName() + " values");
+        }
+        return 2 * key.length() + valueBytes;
+    }
+
+    private static int approximateBytes(JsonNode node) {
+        int bytes = NODE_BYTES;
+        if (node.isObject()) {
+            for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                bytes += 2 * field.getKey().length() + approximateBytes(field.getValue());
+            }
+        } else if (node.isArray()) {
+            for (JsonNode element : node) {
+                bytes += approximateBytes(element);
+            }
+        } else if (node.isTextual()) {
+            bytes += 2 * node.textValue().length();
+        } else if (node.isBinary()) {
+            bytes += ((BinaryNode) node).binaryValue().length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.de314.ac.data.memory;
+
+import java.util.List;
+
+/**
+ * Tracks the keys of a {@link BoundedMapKeyValueStore} and decides which ones to evict once the store is over its
+ * capacity. Implementations are not thread safe, the store serializes every call.
+ */
+public interface EvictionPolicy {
+
+    enum Kind {
+        /** Evict the least recently used key. */
+        LRU,
+        /** Window TinyLFU: admit new keys into the main region only if they are used more often than its victim. */
+        TINY_LFU
+    }
+
+    void onRead(String key);
+
+    /**
+     * Record an insert or update of {@code key}.
+     *
+     * @return the keys to evict to get back under capacity, possibly including {@code key} itself.
+     */
+    List<String> onWrite(String key, long weight);
+
+    void onRemove(String key);
+
+    long getWeightedSize();
+
+    static EvictionPolicy create(Kind kind, long capacity) {
+        switch (kind) {
+            case LRU:
+                return new LruEvictionPolicy(capacity);
+            case TINY_LFU:
+                return new TinyLfuEvictionPolicy(capacity);
+            default:
+                throw new IllegalArgumentException("Unknown eviction policy: " + kind);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.de314.ac.data.memory;
+
+/**
+ * Count-min sketch of small counters saturating at 15, estimating how often a key was used recently. Counters are halved once enough
+ * increments were recorded so that the estimate favours recent popularity.
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    /** Counters per expected key and row, keeps collisions rare enough that one-off keys estimate near zero. */
+    private static final int COUNTERS_PER_KEY = 8;
+    private static final int MIN_WIDTH = 128;
+    private static final int MAX_WIDTH = 1 << 19;
+    private static final int[] SEEDS = { 0x97cb3127, 0xbf58476d, 0x94d049bb, 0x2545f491 };
+
+    private final byte[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long expectedKeys) {
+        int width = Integer.highestOneBit((int) Math.max(MIN_WIDTH, Math.min(MAX_WIDTH, COUNTERS_PER_KEY * Math.min(expectedKeys, MAX_WIDTH))) * 2 - 1);
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width / COUNTERS_PER_KEY;
+    }
+
+    int frequency(String key) {
+        int hash = key.hashCode();
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table[i][index(hash, i)]);
+        }
+        return frequency;
+    }
+
+    void increment(String key) {
+        int hash = key.hashCode();
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            if (table[i][index] < MAX_COUNT) {
+                table[i][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (byte[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (byte) (row[i] >>> 1);
+            }
+        }
+        additions >>>= 1;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
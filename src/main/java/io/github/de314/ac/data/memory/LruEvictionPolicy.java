@@ -0,0 +1,57 @@
+package io.github.de314.ac.data.memory;
+
+import com.google.common.collect.Lists;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evicts the least recently read or written keys first.
+ */
+class LruEvictionPolicy implements EvictionPolicy {
+
+    private final long capacity;
+    /** Key to weight in access order, eldest first. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weightedSize;
+
+    LruEvictionPolicy(long capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void onRead(String key) {
+        entries.get(key);
+    }
+
+    @Override
+    public List<String> onWrite(String key, long weight) {
+        Long previous = entries.put(key, weight);
+        weightedSize += weight - (previous == null ? 0L : previous);
+
+        List<String> victims = Lists.newArrayList();
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (weightedSize > capacity && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            weightedSize -= eldest.getValue();
+            victims.add(eldest.getKey());
+            it.remove();
+        }
+        return victims;
+    }
+
+    @Override
+    public void onRemove(String key) {
+        Long weight = entries.remove(key);
+        if (weight != null) {
+            weightedSize -= weight;
+        }
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+}
@@ -1,22 +1,89 @@
 package io.github.de314.ac.data.memory;
 
+import io.github.de314.ac.data.api.key.KeyCodecs;
+import io.github.de314.ac.data.api.kv.AbstractKeyValueSnapshot;
 import io.github.de314.ac.data.api.kv.AbstractKeyValueStore;
+import io.github.de314.ac.data.api.kv.KeyValueSnapshot;
+import io.github.de314.ac.data.api.kv.SnapshotRegistry;
 import io.github.de314.ac.data.api.model.DataRow;
 import io.github.de314.ac.data.api.model.KVInfo;
 import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import io.github.de314.ac.data.utils.JsonUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Maps;
 import lombok.NonNull;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Thread safe in memory store backed by a {@link ConcurrentSkipListMap}. Reads never block, range scans walk the
+ * matching sub-map only and split it for parallel streams, and batches and range deletes run while no other write
+ * does.
+ *
+ * Keys written with a ttl are hidden from reads once expired and removed by a {@link TimerWheel} that store calls
+ * advance at most once per tick, so no background thread is needed and only expired keys are visited.
+ *
+ * Every write of a key stamps it with the next value of a store wide sequence, which {@link #putIfVersion} and
+ * {@link #compareAndDelete} compare in the same atomic map operation that writes the key.
+ */
 public class MapKeyValueStore<V> extends AbstractKeyValueStore<V> {
 
     public static final String STORE_KIND = "MemoryMap";
+    public static final int EXPIRY_WHEEL_SIZE = 512;
+    public static final long EXPIRY_TICK_MS = 1_000L;
+    /** Expiry time of keys written without a ttl. */
+    protected static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private static final JsonUtils JSON_UTILS = new JsonUtils();
 
     private final String namespace;
-    private final Map<String, V> store = Maps.newTreeMap();
+    private final ConcurrentNavigableMap<String, V> store = new ConcurrentSkipListMap<>(KeyCodecs.UTF8_ORDER);
+    /** {@link ConcurrentSkipListMap#size()} is a full traversal, so the size is tracked on every write. */
+    private final AtomicLong size = new AtomicLong();
+    /**
+     * Writes of single keys share this lock. Taking a snapshot holds it exclusively, so every write either lands
+     * before a snapshot or preserves the previous value of its key in it, in the same map operation as the write.
+     * Batches and range deletes hold it exclusively too, so no other write interleaves with them.
+     */
+    private final ReadWriteLock writeLock = new ReentrantReadWriteLock();
+    private final SnapshotRegistry<MapSnapshot> snapshots = new SnapshotRegistry<>();
+    /** Counters and merged values are updated with atomic map merges, apart from the values. */
+    private final ConcurrentMap<String, Long> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> merged = new ConcurrentHashMap<>();
+    /**
+     * The version of every key. Writes change a value and its version in one {@link ConcurrentMap#compute}, so the
+     * writes of a key are serialized, conditional ones included, while reads stay lock free.
+     */
+    private final ConcurrentMap<String, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final TimerWheel expiry = new TimerWheel(EXPIRY_WHEEL_SIZE, EXPIRY_TICK_MS, System.currentTimeMillis());
 
     public MapKeyValueStore(String namespace) {
         this.namespace = namespace;
@@ -24,7 +91,7 @@ public class MapKeyValueStore<V> extends AbstractKeyValueStore<V> {
 
     @Override
     public KVInfo getInfo() {
-        int size = store.size();
+        long size = count();
         return KVInfo.builder()
                 .kind(STORE_KIND)
                 .namespace(namespace)
@@ -33,42 +100,482 @@ public class MapKeyValueStore<V> extends AbstractKeyValueStore<V> {
                 .build();
     }
 
+    /**
+     * Keys expired during the current tick of the expiry wheel may still be counted.
+     */
     @Override
     public long count() {
-        return store.size();
+        expireDue();
+        return size.get();
+    }
+
+    @Override
+    public long count(ScanOptions options) {
+        if (options.getSnapshot() != null || !expiry.isEmpty()) {
+            return super.count(options);
+        }
+        long limit = options.getLimit(Long.MAX_VALUE);
+        if (options.hasFilter()) {
+            return range(options).values().stream()
+                    .filter(options::test)
+                    .limit(limit)
+                    .count();
+        }
+        return range(options).keySet().stream()
+                .limit(limit)
+                .count();
     }
 
     @Override
     public Optional<V> get(@NonNull String key) {
-        return Optional.ofNullable(store.get(key));
+        expireDue();
+        V value = store.get(key);
+        if (value != null && expiry.isExpired(key, System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(value);
+    }
+
+    @Override
+    public Optional<DataRow<V>> getRow(@NonNull String key) {
+        return get(key).map(value -> row(key, value));
+    }
+
+    /**
+     * @return a row of {@code key} with the version and expiry of {@code value}, or {@code null} once the key was
+     * deleted. A concurrent write replaces the row with the new value, whose version may still be the previous one, so
+     * a write conditional on it fails rather than overwriting a value that was never read.
+     */
+    private DataRow<V> row(String key, V value) {
+        while (true) {
+            // writes set the value before the version, so the version is read first
+            long version = versions.getOrDefault(key, DataRow.NO_VERSION);
+            long expiresAt = expiry.deadline(key);
+            V current = store.get(key);
+            if (current == null) {
+                return null;
+            }
+            if (current == value) {
+                return DataRow.of(key, value, version, expiresAt);
+            }
+            value = current;
+        }
     }
 
     @Override
     public Stream<DataRow<V>> stream(ScanOptions options) {
-        long limit = options.getLimit(100L);
+        long limit = options.getLimit(Long.MAX_VALUE);
         boolean keysOnly = options.getKeysOnly(false);
-        return store.keySet().stream()
-                .filter(options::keyInRange)
-                .limit(limit)
-                .map(key -> DataRow.of(
-                        key,
-                        keysOnly ? null : store.get(key)
-                ));
+        Stream<Map.Entry<String, V>> entries;
+        boolean versioned = !keysOnly && options.getSnapshot() == null;
+        if (options.getSnapshot() != null) {
+            // pinned until the stream is closed, so writers keep preserving values for it
+            MapSnapshot snapshot = snapshots.pin(options.getSnapshot());
+            entries = snapshot.entries(options).onClose(() -> snapshots.unpin(snapshot.getId()));
+        } else {
+            ConcurrentNavigableMap<String, V> range = options.getReverse(false) ? range(options).descendingMap() : range(options);
+            entries = StreamSupport.stream(new SubMapSpliterator<>(range, size.get()), false);
+        }
+        if (!expiry.isEmpty()) {
+            long now = System.currentTimeMillis();
+            entries = entries.filter(entry -> !expiry.isExpired(entry.getKey(), now));
+        }
+        if (options.hasFilter()) {
+            entries = entries.filter(entry -> options.test(entry.getValue()));
+        }
+        if (limit < Long.MAX_VALUE) {
+            // limit is a stateful operation that would keep parallel streams from splitting
+            entries = entries.limit(limit);
+        }
+        if (versioned) {
+            return entries.map(entry -> row(entry.getKey(), entry.getValue())).filter(Objects::nonNull);
+        }
+        return entries.map(entry -> DataRow.of(
+                entry.getKey(),
+                keysOnly ? null : entry.getValue()
+        ));
+    }
+
+    /**
+     * Snapshots are copy-on-write: while one is open, the first write to each key copies its previous value into the
+     * snapshot. Writes of different keys still run concurrently.
+     */
+    @Override
+    public KeyValueSnapshot<V> snapshot(@NonNull Duration lease) {
+        return exclusiveWrite(() -> snapshots.register(new MapSnapshot(), lease));
     }
 
     @Override
     public void put(@NonNull String key, V value) {
-        store.put(key, value);
+        put(key, value, NO_EXPIRY);
+    }
+
+    @Override
+    public void put(@NonNull String key, V value, @NonNull Duration ttl) {
+        put(key, value, System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    /**
+     * @param expiresAt epoch millis the key expires at, {@link #NO_EXPIRY} to keep it until it is deleted.
+     */
+    protected void put(String key, V value, long expiresAt) {
+        expireDue();
+        if (value == null) {
+            delete(key);
+        } else {
+            insert(key, value, expiresAt);
+        }
+    }
+
+    @Override
+    public boolean putIfVersion(@NonNull String key, long expectedVersion, V value) {
+        expireDue();
+        return update(key, row -> versionOf(row) == expectedVersion, row -> value);
+    }
+
+    @Override
+    public boolean compareAndDelete(@NonNull String key, long expectedVersion) {
+        expireDue();
+        return expectedVersion != DataRow.NO_VERSION && update(key, row -> versionOf(row) == expectedVersion, row -> null);
+    }
+
+    private static long versionOf(DataRow<?> row) {
+        return row != null ? row.getVersion() : DataRow.NO_VERSION;
+    }
+
+    /**
+     * No other write runs while the batch is applied, and snapshots see all of it or none of it. Reads do not block,
+     * so a read of several keys may see some of the batch applied and the rest not yet.
+     */
+    @Override
+    public void write(@NonNull WriteBatch<V> batch) {
+        exclusiveWrite(() -> {
+            for (WriteBatch.Operation<V> op : batch.getOperations()) {
+                put(op.getKey(), op.getValue());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Values keep their type: JSON nodes are patched directly, other objects through their JSON form. A missing key
+     * is created with the patch as a {@link JsonNode}. The value is read, patched and written in one step, so no
+     * other write of the key lands in between.
+     */
+    @Override
+    public void patch(@NonNull String key, @NonNull JsonNode patch) {
+        expireDue();
+        update(key, row -> true, row -> patched(row != null ? row.getValue() : null, patch));
+    }
+
+    @SuppressWarnings("unchecked")
+    private V patched(V current, JsonNode patch) {
+        if (current == null || current instanceof JsonNode) {
+            return (V) JSON_UTILS.applyPatch((JsonNode) current, patch);
+        }
+        JsonNode patched = JSON_UTILS.applyPatch(JSON_UTILS.asNode(current), patch);
+        return (V) JSON_UTILS.fromJson(patched, current.getClass());
+    }
+
+    @Override
+    public void increment(@NonNull String key, long delta) {
+        counters.merge(key, delta, Long::sum);
+    }
+
+    @Override
+    public long getCounter(@NonNull String key) {
+        return counters.getOrDefault(key, 0L);
+    }
+
+    @Override
+    public void merge(@NonNull String key, @NonNull String operand) {
+        merged.merge(key, operand, (current, next) -> current + MERGE_DELIMITER + next);
+    }
+
+    @Override
+    public Optional<String> getMerged(@NonNull String key) {
+        return Optional.ofNullable(merged.get(key));
     }
 
     @Override
     public boolean delete(@NonNull String key) {
-        return store.remove(key) != null;
+        return remove(key) != null;
+    }
+
+    @Override
+    public long delete(ScanOptions options) {
+        return exclusiveWrite(() -> {
+            long count = 0L;
+            for (Map.Entry<String, V> entry : range(options).entrySet()) {
+                if (options.test(entry.getValue()) && delete(entry.getKey())) {
+                    count++;
+                }
+            }
+            return count;
+        });
     }
 
     @Override
     public void close() {
-        // ignored
+        snapshots.closeAll();
+        expiry.clear();
+        versions.clear();
+    }
+
+    /**
+     * Remove the keys whose ttl has passed, up to the last full tick of the expiry wheel.
+     *
+     * @return the number of keys removed.
+     */
+    public long purgeExpired() {
+        long now = System.currentTimeMillis();
+        return expiry.advance(now, key -> expire(key, now) != null);
+    }
+
+    /**
+     * Advance the expiry wheel if a tick has passed. Must not be called while holding a lock {@link #expire} takes.
+     */
+    protected void expireDue() {
+        if (!expiry.isEmpty() && expiry.isDue(System.currentTimeMillis())) {
+            purgeExpired();
+        }
+    }
+
+    /**
+     * Remove {@code key} if it is still expired at {@code now}. Snapshots do not preserve expired values.
+     *
+     * @return the removed value, if any.
+     */
+    protected V expire(String key, long now) {
+        V current = store.get(key);
+        if (current == null || !expiry.isExpired(key, now)) {
+            return null;
+        }
+        AtomicBoolean removed = new AtomicBoolean();
+        versions.computeIfPresent(key, (k, version) -> {
+            removed.set(store.remove(key, current));
+            return removed.get() ? null : version;
+        });
+        if (!removed.get()) {
+            return null;
+        }
+        size.decrementAndGet();
+        return current;
+    }
+
+    /**
+     * Write {@code key}, scheduling its expiry in the same step so no other write of the key lands in between.
+     *
+     * @return the previous value of {@code key}, if any.
+     */
+    protected V insert(String key, V value, long expiresAt) {
+        AtomicReference<V> previous = new AtomicReference<>();
+        write(key, row -> true, row -> value, expiresAt, previous);
+        return previous.get();
+    }
+
+    /**
+     * @return the removed value of {@code key}, if any.
+     */
+    protected V remove(String key) {
+        AtomicReference<V> removed = new AtomicReference<>();
+        write(key, row -> true, row -> null, NO_EXPIRY, removed);
+        return removed.get();
+    }
+
+    /**
+     * Write {@code key} if {@code condition} holds for its current row, {@code null} when it is missing or expired,
+     * with the value {@code change} computes from that row, deleting the key for {@code null}. The check and the
+     * write happen in the same step as every other write of the key, so no write lands between them.
+     *
+     * @return whether the key was written.
+     */
+    protected boolean update(String key, Predicate<DataRow<V>> condition, Function<DataRow<V>, V> change) {
+        return write(key, condition, change, NO_EXPIRY, new AtomicReference<>());
+    }
+
+    private boolean write(
+            String key,
+            Predicate<DataRow<V>> condition,
+            Function<DataRow<V>, V> change,
+            long expiresAt,
+            AtomicReference<V> previous
+    ) {
+        long now = System.currentTimeMillis();
+        AtomicBoolean written = new AtomicBoolean();
+        AtomicReference<V> next = new AtomicReference<>();
+        Lock shared = writeLock.readLock();
+        shared.lock();
+        try {
+            List<MapSnapshot> live = snapshots.isEmpty() ? Collections.emptyList() : snapshots.live();
+            // the value and its version change together, see row(String, Object)
+            versions.compute(key, (k, version) -> {
+                V current = store.get(key);
+                DataRow<V> row = current != null && !expiry.isExpired(key, now)
+                        ? DataRow.of(key, current, version != null ? version : DataRow.NO_VERSION)
+                        : null;
+                if (!condition.test(row)) {
+                    return version;
+                }
+                written.set(true);
+                next.set(change.apply(row));
+                live.forEach(snapshot -> snapshot.preserve(key, row != null ? current : null));
+                if (next.get() != null && expiresAt != NO_EXPIRY) {
+                    expiry.schedule(key, expiresAt);
+                } else {
+                    expiry.cancel(key);
+                }
+                if (next.get() == null) {
+                    previous.set(store.remove(key));
+                    return null;
+                }
+                previous.set(store.put(key, next.get()));
+                return sequence.incrementAndGet();
+            });
+        } finally {
+            shared.unlock();
+        }
+        if (!written.get()) {
+            return false;
+        }
+        if (next.get() != null && previous.get() == null) {
+            size.incrementAndGet();
+        } else if (next.get() == null && previous.get() != null) {
+            size.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Run {@code write} holding the lock single key writes share. Subclasses that lock around writes take their own
+     * locks inside this one, since batches hold it exclusively and write through them.
+     */
+    protected <T> T sharedWrite(Supplier<T> write) {
+        Lock shared = writeLock.readLock();
+        shared.lock();
+        try {
+            return write.get();
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    private <T> T exclusiveWrite(Supplier<T> write) {
+        Lock exclusive = writeLock.writeLock();
+        exclusive.lock();
+        try {
+            return write.get();
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * @return a live view of the entries between the (inclusive) start and end keys of {@code options} that start with
+     * its prefix.
+     */
+    private ConcurrentNavigableMap<String, V> range(ScanOptions options) {
+        return range(store, options);
+    }
+
+    private static <T> ConcurrentNavigableMap<String, T> range(ConcurrentNavigableMap<String, T> store, ScanOptions options) {
+        String prefix = options.getPrefix();
+        String startKey = options.getStartKey();
+        String endKey = options.getEndKey();
+        boolean endInclusive = true;
+        if (prefix != null) {
+            if (startKey == null || KeyCodecs.compareUtf8(startKey, prefix) < 0) {
+                startKey = prefix;
+            }
+            String prefixEnd = KeyCodecs.prefixEnd(prefix);
+            if (prefixEnd != null && (endKey == null || KeyCodecs.compareUtf8(prefixEnd, endKey) <= 0)) {
+                endKey = prefixEnd;
+                endInclusive = false;
+            }
+        }
+        if (startKey != null && endKey != null) {
+            return KeyCodecs.compareUtf8(startKey, endKey) <= 0
+                    ? store.subMap(startKey, true, endKey, endInclusive)
+                    : store.subMap(startKey, true, startKey, false);
+        } else if (startKey != null) {
+            return store.tailMap(startKey, true);
+        } else if (endKey != null) {
+            return store.headMap(endKey, endInclusive);
+        }
+        return store;
+    }
+
+    private class MapSnapshot extends AbstractKeyValueSnapshot<V> {
+
+        /** Values as of the snapshot of keys written since it was taken, empty for keys that did not exist. */
+        private final ConcurrentNavigableMap<String, Optional<V>> preserved = new ConcurrentSkipListMap<>(KeyCodecs.UTF8_ORDER);
+
+        private MapSnapshot() {
+            super(MapKeyValueStore.this);
+        }
+
+        private void preserve(String key, V current) {
+            preserved.putIfAbsent(key, Optional.ofNullable(current));
+        }
+
+        @Override
+        public Optional<V> get(@NonNull String key) {
+            snapshots.acquire(getId());
+            return read(key);
+        }
+
+        private Optional<V> read(String key) {
+            // writers preserve a key before changing it, so reading the live value first never sees a newer one
+            V live = store.get(key);
+            if (live != null && expiry.isExpired(key, System.currentTimeMillis())) {
+                live = null;
+            }
+            Optional<V> old = preserved.get(key);
+            return old != null ? old : Optional.ofNullable(live);
+        }
+
+        /**
+         * Merge the live and preserved keys of the range. Each step looks the next keys up again instead of using
+         * iterators, which may miss keys preserved or removed while the scan runs.
+         */
+        private Stream<Map.Entry<String, V>> entries(ScanOptions options) {
+            boolean reverse = options.getReverse(false);
+            NavigableMap<String, V> live = reverse ? range(store, options).descendingMap() : range(store, options);
+            NavigableMap<String, Optional<V>> old = reverse ? range(preserved, options).descendingMap() : range(preserved, options);
+            Comparator<? super String> order = live.comparator();
+            Iterator<Map.Entry<String, V>> it = new AbstractIterator<Map.Entry<String, V>>() {
+                private String last;
+
+                @Override
+                protected Map.Entry<String, V> computeNext() {
+                    while (true) {
+                        // live keys first: a key removed after this lookup was preserved before
+                        String liveKey = nextKey(live, last);
+                        String oldKey = nextKey(old, last);
+                        if (liveKey == null && oldKey == null) {
+                            return endOfData();
+                        }
+                        last = liveKey == null || (oldKey != null && order.compare(oldKey, liveKey) < 0) ? oldKey : liveKey;
+                        Optional<V> value = read(last);
+                        if (value.isPresent()) {
+                            return Maps.immutableEntry(last, value.get());
+                        }
+                    }
+                }
+            };
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        @Override
+        protected void release() {
+            snapshots.remove(getId());
+            preserved.clear();
+        }
+    }
+
+    private static <T> String nextKey(NavigableMap<String, T> map, String last) {
+        Map.Entry<String, T> entry = last == null ? map.firstEntry() : map.higherEntry(last);
+        return entry != null ? entry.getKey() : null;
     }
 
     public static <ValueT> MapKeyValueStore<ValueT> create(String namespace) {
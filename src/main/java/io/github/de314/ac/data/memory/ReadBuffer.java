@@ -0,0 +1,80 @@
+package io.github.de314.ac.data.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped, lossy buffer of the keys read from a {@link BoundedMapKeyValueStore}. Readers record a key without taking
+ * the eviction policy's lock; the records are replayed to the policy in batches by whoever holds it. A record is
+ * dropped when its stripe is full or another reader wins the race for its slot, which only costs the policy a
+ * little accuracy.
+ */
+class ReadBuffer {
+
+    static final int STRIPE_SIZE = 16;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    ReadBuffer() {
+        // a power of two of at least four stripes per processor
+        int stripes = Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * @return whether the stripe of the calling thread is full and should be drained.
+     */
+    boolean offer(String key) {
+        return stripes[(int) Thread.currentThread().getId() & mask].offer(key);
+    }
+
+    /**
+     * Replay the buffered reads to {@code consumer}. Callers must serialize drains.
+     */
+    void drain(Consumer<String> consumer) {
+        for (Stripe stripe : stripes) {
+            stripe.drain(consumer);
+        }
+    }
+
+    private static class Stripe {
+        private final AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        private final AtomicLong reads = new AtomicLong();
+
+        boolean offer(String key) {
+            long read = reads.get();
+            long write = writes.get();
+            if (write - read >= STRIPE_SIZE) {
+                return true;
+            }
+            if (writes.compareAndSet(write, write + 1)) {
+                slots.lazySet((int) (write % STRIPE_SIZE), key);
+                return write + 1 - read >= STRIPE_SIZE;
+            }
+            return false;
+        }
+
+        void drain(Consumer<String> consumer) {
+            long read = reads.get();
+            long write = writes.get();
+            for (; read < write; read++) {
+                int slot = (int) (read % STRIPE_SIZE);
+                String key = slots.get(slot);
+                if (key == null) {
+                    // claimed but not yet published, the next drain picks it up
+                    break;
+                }
+                slots.lazySet(slot, null);
+                consumer.accept(key);
+            }
+            reads.lazySet(read);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.de314.ac.data.memory;
+
+import io.github.de314.ac.data.api.key.KeyCodecs;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.function.Consumer;
+
+/**
+ * Splittable spliterator over a sorted map view. Sub-map views of a {@link java.util.concurrent.ConcurrentSkipListMap}
+ * do not split, so this one halves the view at the existing key nearest to the midpoint of its first and last keys.
+ * Finding that key is a logarithmic lookup, no entries are copied.
+ */
+class SubMapSpliterator<V> implements Spliterator<Map.Entry<String, V>> {
+
+    private ConcurrentNavigableMap<String, V> map;
+    private long estimatedSize;
+    private Iterator<Map.Entry<String, V>> it;
+
+    SubMapSpliterator(ConcurrentNavigableMap<String, V> map, long estimatedSize) {
+        this.map = map;
+        this.estimatedSize = estimatedSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<String, V>> action) {
+        if (it == null) {
+            it = map.entrySet().iterator();
+        }
+        if (it.hasNext()) {
+            action.accept(it.next());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<Map.Entry<String, V>> trySplit() {
+        if (it != null || map.isEmpty()) {
+            return null;
+        }
+        String first = map.firstKey();
+        String last = map.lastKey();
+        // descending views iterate from the greatest key
+        String mid = KeyCodecs.compareUtf8(first, last) <= 0 ? midpoint(first, last) : midpoint(last, first);
+        String splitKey = mid != null ? map.ceilingKey(mid) : null;
+        if (splitKey == null || splitKey.equals(first)) {
+            return null;
+        }
+        long half = estimatedSize / 2;
+        SubMapSpliterator<V> head = new SubMapSpliterator<>(map.headMap(splitKey, false), half);
+        map = map.tailMap(splitKey, true);
+        estimatedSize -= half;
+        return head;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
+
+    /**
+     * @return a string between {@code low} and {@code high} in code point order, or {@code null} if they are adjacent.
+     */
+    static String midpoint(String low, String high) {
+        int[] lowCodePoints = low.codePoints().toArray();
+        int[] highCodePoints = high.codePoints().toArray();
+        int i = 0;
+        while (i < lowCodePoints.length && i < highCodePoints.length && lowCodePoints[i] == highCodePoints[i]) {
+            i++;
+        }
+        if (i == highCodePoints.length) {
+            return null;
+        }
+        StringBuilder mid = new StringBuilder();
+        for (int j = 0; j < i; j++) {
+            mid.appendCodePoint(lowCodePoints[j]);
+        }
+        int lowCodePoint = i < lowCodePoints.length ? lowCodePoints[i] : -1;
+        int highCodePoint = highCodePoints[i];
+        if (highCodePoint - lowCodePoint >= 2) {
+            return mid.appendCodePoint(validCodePoint((lowCodePoint + highCodePoint + 1) / 2)).toString();
+        }
+        if (lowCodePoint < 0) {
+            // high is low followed by NUL, nothing sorts in between
+            return null;
+        }
+        // the next code points differ by one: stay on low's side and pick a midpoint of low's remainder
+        mid.appendCodePoint(lowCodePoint);
+        int next = i + 1 < lowCodePoints.length ? lowCodePoints[i + 1] : -1;
+        if (Character.MAX_CODE_POINT - next < 2) {
+            return null;
+        }
+        return mid.appendCodePoint(validCodePoint((next + Character.MAX_CODE_POINT + 1) / 2)).toString();
+    }
+
+    private static int validCodePoint(int codePoint) {
+        return codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE
+                ? Character.MAX_SURROGATE + 1
+                : codePoint;
+    }
+}
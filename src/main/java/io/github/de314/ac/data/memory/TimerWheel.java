@@ -0,0 +1,103 @@
+package io.github.de314.ac.data.memory;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Hashed timer wheel of key expiry times. Each key is filed in the bucket of the tick it expires in, so advancing the
+ * wheel only visits the buckets of ticks that have passed instead of every key with a ttl. Keys due more than one
+ * rotation ahead share a bucket with earlier ones and stay in it until their own rotation has passed.
+ */
+class TimerWheel {
+
+    private final long tickMillis;
+    private final List<Map<String, Long>> buckets;
+    /** The current expiry time of every scheduled key, rescheduling or cancelling a key leaves its old bucket stale. */
+    private final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+    /** The first tick that has not been swept yet. */
+    private volatile long nextTick;
+
+    TimerWheel(int size, long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.buckets = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ConcurrentHashMap<>());
+        }
+        this.nextTick = now / tickMillis;
+    }
+
+    void schedule(String key, long deadline) {
+        deadlines.put(key, deadline);
+        // a deadline in a tick that was already swept is picked up by the next sweep
+        long tick = Math.max(deadline / tickMillis, nextTick);
+        bucket(tick).put(key, deadline);
+    }
+
+    void cancel(String key) {
+        deadlines.remove(key);
+    }
+
+    /**
+     * @return the expiry time of {@code key}, {@code Long.MAX_VALUE} if it has none.
+     */
+    long deadline(String key) {
+        return deadlines.getOrDefault(key, Long.MAX_VALUE);
+    }
+
+    boolean isExpired(String key, long now) {
+        Long deadline = deadlines.get(key);
+        return deadline != null && deadline <= now;
+    }
+
+    boolean isEmpty() {
+        return deadlines.isEmpty();
+    }
+
+    /**
+     * @return whether a tick has passed since the last {@link #advance(long, Predicate) advance}.
+     */
+    boolean isDue(long now) {
+        return now / tickMillis > nextTick;
+    }
+
+    /**
+     * Sweep the buckets of all ticks that passed before {@code now}. Every key whose deadline is still current is
+     * handed to {@code expire}, which removes it if it is still due.
+     *
+     * @return the number of keys {@code expire} removed.
+     */
+    synchronized long advance(long now, Predicate<String> expire) {
+        long tick = now / tickMillis;
+        // after a long pause every bucket is swept once
+        long fromTick = Math.max(nextTick, tick - buckets.size());
+        long expired = 0L;
+        for (long t = fromTick; t < tick; t++) {
+            Map<String, Long> bucket = bucket(t);
+            for (Map.Entry<String, Long> entry : bucket.entrySet()) {
+                String key = entry.getKey();
+                Long deadline = entry.getValue();
+                if (deadline <= now && bucket.remove(key, deadline)) {
+                    if (deadline.equals(deadlines.get(key)) && expire.test(key)) {
+                        expired++;
+                    }
+                    deadlines.remove(key, deadline);
+                }
+            }
+        }
+        nextTick = Math.max(nextTick, tick);
+        return expired;
+    }
+
+    void clear() {
+        deadlines.clear();
+        buckets.forEach(Map::clear);
+    }
+
+    private Map<String, Long> bucket(long tick) {
+        return buckets.get((int) (tick % buckets.size()));
+    }
+}
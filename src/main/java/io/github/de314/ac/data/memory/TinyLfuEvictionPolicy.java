@@ -0,0 +1,142 @@
+package io.github.de314.ac.data.memory;
+
+import com.google.common.collect.Lists;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Window TinyLFU. New keys enter a small LRU window (1% of the capacity). Keys leaving the window are only admitted
+ * into the main segmented LRU if the {@link FrequencySketch} estimates them to be more popular than the main
+ * region's victim, which keeps one-off scans and bursts of new keys from flushing out the hot set.
+ */
+class TinyLfuEvictionPolicy implements EvictionPolicy {
+
+    private final long capacity;
+    private final long windowCapacity;
+    private final long mainCapacity;
+    private final long protectedCapacity;
+    private final FrequencySketch sketch;
+
+    /** Each region maps key to weight in access order, eldest first. */
+    private final Region window = new Region();
+    private final Region probation = new Region();
+    private final Region protectedRegion = new Region();
+
+    TinyLfuEvictionPolicy(long capacity) {
+        this.capacity = capacity;
+        this.windowCapacity = Math.max(1L, capacity / 100);
+        this.mainCapacity = Math.max(0L, capacity - windowCapacity);
+        this.protectedCapacity = mainCapacity * 80 / 100;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    @Override
+    public void onRead(String key) {
+        sketch.increment(key);
+        if (window.entries.containsKey(key)) {
+            window.entries.get(key);
+        } else if (probation.entries.containsKey(key)) {
+            protectedRegion.put(key, probation.remove(key));
+            while (protectedRegion.weight > protectedCapacity && !protectedRegion.entries.isEmpty()) {
+                String eldest = protectedRegion.eldest();
+                probation.put(eldest, protectedRegion.remove(eldest));
+            }
+        } else if (protectedRegion.entries.containsKey(key)) {
+            protectedRegion.entries.get(key);
+        }
+    }
+
+    @Override
+    public List<String> onWrite(String key, long weight) {
+        Region region = regionOf(key);
+        if (region != null) {
+            region.put(key, weight);
+            onRead(key);
+        } else {
+            sketch.increment(key);
+            window.put(key, weight);
+        }
+
+        List<String> victims = Lists.newArrayList();
+        while (window.weight > windowCapacity && !window.entries.isEmpty()) {
+            String candidate = window.eldest();
+            admit(candidate, window.remove(candidate), victims);
+        }
+        while (getWeightedSize() > capacity) {
+            Region victimRegion = !probation.entries.isEmpty() ? probation
+                    : !protectedRegion.entries.isEmpty() ? protectedRegion
+                    : window;
+            String victim = victimRegion.eldest();
+            victimRegion.remove(victim);
+            victims.add(victim);
+        }
+        return victims;
+    }
+
+    private void admit(String candidate, long weight, List<String> victims) {
+        while (probation.weight + protectedRegion.weight + weight > mainCapacity) {
+            Region victimRegion = !probation.entries.isEmpty() ? probation : protectedRegion;
+            if (victimRegion.entries.isEmpty()) {
+                break;
+            }
+            String victim = victimRegion.eldest();
+            if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+                victimRegion.remove(victim);
+                victims.add(victim);
+            } else {
+                victims.add(candidate);
+                return;
+            }
+        }
+        probation.put(candidate, weight);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        Region region = regionOf(key);
+        if (region != null) {
+            region.remove(key);
+        }
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return window.weight + probation.weight + protectedRegion.weight;
+    }
+
+    private Region regionOf(String key) {
+        if (window.entries.containsKey(key)) {
+            return window;
+        } else if (probation.entries.containsKey(key)) {
+            return probation;
+        } else if (protectedRegion.entries.containsKey(key)) {
+            return protectedRegion;
+        }
+        return null;
+    }
+
+    private static class Region {
+
+        private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        void put(String key, long keyWeight) {
+            Long previous = entries.put(key, keyWeight);
+            weight += keyWeight - (previous == null ? 0L : previous);
+        }
+
+        long remove(String key) {
+            Long previous = entries.remove(key);
+            long removed = previous == null ? 0L : previous;
+            weight -= removed;
+            return removed;
+        }
+
+        String eldest() {
+            Map.Entry<String, Long> eldest = entries.entrySet().iterator().next();
+            return eldest.getKey();
+        }
+    }
+}
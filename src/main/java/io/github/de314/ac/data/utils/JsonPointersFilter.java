@@ -0,0 +1,65 @@
+package io.github.de314.ac.data.utils;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Streaming filter that keeps the values at any of several JSON pointers, together with the objects and arrays
+ * enclosing them. Everything else is skipped by the parser without being materialized.
+ */
+class JsonPointersFilter extends TokenFilter {
+
+    private final List<JsonPointer> pointers;
+
+    private JsonPointersFilter(List<JsonPointer> pointers) {
+        this.pointers = pointers;
+    }
+
+    @Override
+    public TokenFilter includeProperty(String name) {
+        return descend(pointer -> pointer.matchProperty(name));
+    }
+
+    @Override
+    public TokenFilter includeElement(int index) {
+        return descend(pointer -> pointer.matchElement(index));
+    }
+
+    @Override
+    protected boolean _includeScalar() {
+        return false;
+    }
+
+    private TokenFilter descend(Function<JsonPointer, JsonPointer> matcher) {
+        List<JsonPointer> remaining = Lists.newArrayList();
+        for (JsonPointer pointer : pointers) {
+            JsonPointer tail = matcher.apply(pointer);
+            if (tail != null) {
+                if (tail.matches()) {
+                    return TokenFilter.INCLUDE_ALL;
+                }
+                remaining.add(tail);
+            }
+        }
+        return remaining.isEmpty() ? null : new JsonPointersFilter(remaining);
+    }
+
+    /**
+     * @param paths JSON pointers such as {@code /title} or {@code /author/name}.
+     */
+    static TokenFilter of(List<String> paths) {
+        List<JsonPointer> pointers = Lists.newArrayList();
+        for (String path : paths) {
+            JsonPointer pointer = JsonPointer.compile(path);
+            if (pointer.matches()) {
+                return TokenFilter.INCLUDE_ALL;
+            }
+            pointers.add(pointer);
+        }
+        return new JsonPointersFilter(pointers);
+    }
+}
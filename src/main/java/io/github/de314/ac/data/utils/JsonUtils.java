@@ -1,23 +1,48 @@
 package io.github.de314.ac.data.utils;
 
+import io.github.de314.ac.data.api.model.ValueCodec;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Bytes;
 import lombok.NonNull;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 public class JsonUtils {
 
+    /**
+     * Separates a JSON document from the patches appended to it. Compact JSON never contains a raw line feed, so
+     * values without one have no patches to fold.
+     */
+    public static final char PATCH_DELIMITER = '\n';
+
     private static final ObjectMapper JSON_OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectMapper SMILE_OBJECT_MAPPER = new ObjectMapper(new SmileFactory());
+    private static final ObjectMapper CBOR_OBJECT_MAPPER = new ObjectMapper(new CBORFactory());
 
     private final ObjectMapper jsonObjectMapper;
+    /** Readers and writers bound to a type per codec, so the type is resolved only once per class. */
+    private final Map<ValueCodec, Map<Class<?>, ObjectReader>> readers = Maps.newEnumMap(ValueCodec.class);
+    private final Map<ValueCodec, Map<Class<?>, ObjectWriter>> writers = Maps.newEnumMap(ValueCodec.class);
 
     public JsonUtils() {
         this(JSON_OBJECT_MAPPER);
@@ -25,6 +50,10 @@ public class JsonUtils {
 
     public JsonUtils(ObjectMapper jsonObjectMapper) {
         this.jsonObjectMapper = jsonObjectMapper;
+        for (ValueCodec codec : ValueCodec.values()) {
+            readers.put(codec, Maps.newConcurrentMap());
+            writers.put(codec, Maps.newConcurrentMap());
+        }
     }
 
     public ObjectNode createObject() {
@@ -83,6 +112,46 @@ public class JsonUtils {
         return mainNode;
     }
 
+    /**
+     * @return a copy of {@code doc} with {@code patch} deep merged into it by {@link #applyMerge(JsonNode, JsonNode)}.
+     * A patch or document that is not an object replaces the document.
+     */
+    public JsonNode applyPatch(JsonNode doc, @NonNull JsonNode patch) {
+        if (doc == null || !doc.isObject() || !patch.isObject()) {
+            return patch.deepCopy();
+        }
+        return applyMerge(doc.deepCopy(), patch.deepCopy());
+    }
+
+    /**
+     * Merge the patches appended to a JSON document, separated by {@link #PATCH_DELIMITER}, into it in order. Only
+     * call this for values of namespaces that take patches, other values are returned as they are.
+     *
+     * @return the merged document, or {@code value} itself when nothing was appended to it.
+     */
+    public byte[] foldPatches(byte[] value) {
+        if (value == null || ValueCodec.detect(value) != ValueCodec.JSON || Bytes.indexOf(value, (byte) PATCH_DELIMITER) < 0) {
+            return value;
+        }
+        try {
+            return asBytes(readPatched(value));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return value;
+    }
+
+    private JsonNode readPatched(byte[] value) throws IOException {
+        JsonNode doc = null;
+        try (MappingIterator<JsonNode> nodes = jsonObjectMapper.readerFor(JsonNode.class).readValues(value)) {
+            while (nodes.hasNext()) {
+                JsonNode patch = nodes.next();
+                doc = doc != null && doc.isObject() && patch.isObject() ? applyMerge(doc, patch) : patch;
+            }
+        }
+        return doc;
+    }
+
     public String asString(JsonNode node) {
         if (node == null) {
             return "null";
@@ -95,7 +164,7 @@ public class JsonUtils {
             return "null";
         }
         try {
-            return jsonObjectMapper.writeValueAsString(value);
+            return writerFor(value.getClass()).writeValueAsString(value);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
@@ -106,7 +175,12 @@ public class JsonUtils {
         if (node == null) {
             return new byte[0];
         }
-        return node.toString().getBytes(Charset.defaultCharset());
+        try {
+            return jsonObjectMapper.writeValueAsBytes(node);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+        return new byte[0];
     }
 
     public byte[] asBytes(Object value) {
@@ -114,21 +188,145 @@ public class JsonUtils {
             return new byte[0];
         }
         try {
-            return jsonObjectMapper.writeValueAsBytes(value);
+            return writerFor(value.getClass()).writeValueAsBytes(value);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
         return new byte[0];
     }
 
-    // TODO:
-    public JsonNode asNode(Object value) {
+    /**
+     * Serialize {@code value} with {@code codec}, prefixed by the codec's header byte when it has one.
+     */
+    public byte[] encode(Object value, @NonNull ValueCodec codec) {
+        if (!codec.hasHeader()) {
+            return asBytes(value);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            out.write(codec.getHeader());
+            writerFor(codec, value.getClass()).writeValue(out, value);
+            return out.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new byte[0];
+    }
+
+    /**
+     * Deserialize a value written by {@link #encode(Object, ValueCodec)} or plain text JSON, detecting the codec from
+     * its header byte.
+     */
+    public <T> T decode(byte[] value, @NonNull Class<T> targetKind) {
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        ValueCodec codec = ValueCodec.detect(value);
+        return read(readerFor(codec, targetKind), codec, value);
+    }
+
+    public JsonNode decode(byte[] value) {
+        return decode(value, JsonNode.class);
+    }
+
+    /**
+     * @return a decoder like {@link #decode(byte[], Class)} with the readers of every codec bound up front.
+     */
+    public <T> Function<byte[], T> decoderFor(@NonNull Class<T> targetKind) {
+        Map<ValueCodec, ObjectReader> bound = Maps.newEnumMap(ValueCodec.class);
+        for (ValueCodec codec : ValueCodec.values()) {
+            bound.put(codec, readerFor(codec, targetKind));
+        }
+        return value -> {
+            if (value == null || value.length == 0) {
+                return null;
+            }
+            ValueCodec codec = ValueCodec.detect(value);
+            return read(bound.get(codec), codec, value);
+        };
+    }
+
+    /**
+     * @return a decoder that only reads the values at the JSON pointer {@code projection} paths and the objects
+     * enclosing them, skipping the rest of each document in the parser. An empty projection reads whole values.
+     */
+    public <T> Function<byte[], T> decoderFor(@NonNull Class<T> targetKind, List<String> projection) {
+        if (projection == null || projection.isEmpty()) {
+            return decoderFor(targetKind);
+        }
+        TokenFilter filter = JsonPointersFilter.of(projection);
+        Map<ValueCodec, ObjectReader> bound = Maps.newEnumMap(ValueCodec.class);
+        for (ValueCodec codec : ValueCodec.values()) {
+            bound.put(codec, readerFor(codec, targetKind));
+        }
+        return value -> {
+            if (value == null || value.length == 0) {
+                return null;
+            }
+            ValueCodec codec = ValueCodec.detect(value);
+            ObjectReader reader = bound.get(codec);
+            int offset = codec.hasHeader() ? 1 : 0;
+            try (JsonParser parser = new FilteringParserDelegate(
+                    reader.getFactory().createParser(value, offset, value.length - offset), filter, true, true
+            )) {
+                T projected = parser.nextToken() != null ? reader.readValue(parser) : null;
+                return projected == null && targetKind == JsonNode.class ? targetKind.cast(createObject()) : projected;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return null;
+        };
+    }
+
+    private <T> T read(ObjectReader reader, ValueCodec codec, byte[] value) {
+        int offset = codec.hasHeader() ? 1 : 0;
+        try {
+            return reader.readValue(value, offset, value.length - offset);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         return null;
     }
 
+    public ObjectReader readerFor(@NonNull Class<?> targetKind) {
+        return readerFor(ValueCodec.JSON, targetKind);
+    }
+
+    public ObjectReader readerFor(@NonNull ValueCodec codec, @NonNull Class<?> targetKind) {
+        return readers.get(codec).computeIfAbsent(targetKind, kind -> mapperFor(codec).readerFor(kind));
+    }
+
+    public ObjectWriter writerFor(@NonNull Class<?> valueKind) {
+        return writerFor(ValueCodec.JSON, valueKind);
+    }
+
+    public ObjectWriter writerFor(@NonNull ValueCodec codec, @NonNull Class<?> valueKind) {
+        return writers.get(codec).computeIfAbsent(valueKind, kind -> mapperFor(codec).writerFor(kind));
+    }
+
+    private ObjectMapper mapperFor(ValueCodec codec) {
+        switch (codec) {
+            case SMILE:
+                return SMILE_OBJECT_MAPPER;
+            case CBOR:
+                return CBOR_OBJECT_MAPPER;
+            default:
+                return jsonObjectMapper;
+        }
+    }
+
+    public JsonNode asNode(Object value) {
+        if (value == null) {
+            return NullNode.getInstance();
+        } else if (value instanceof JsonNode) {
+            return (JsonNode) value;
+        }
+        return jsonObjectMapper.valueToTree(value);
+    }
+
     public <T> T fromJson(@NonNull String json, @NonNull Class<T> targetKind) {
         try {
-            return jsonObjectMapper.readValue(json, targetKind);
+            return readerFor(targetKind).readValue(json);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -155,7 +353,7 @@ public class JsonUtils {
 
     public <T> T fromJson(@NonNull byte[] json, @NonNull Class<T> targetKind) {
         try {
-            return jsonObjectMapper.readValue(json, targetKind);
+            return readerFor(targetKind).readValue(json);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -164,9 +362,8 @@ public class JsonUtils {
 
     public <T> T fromJson(@NonNull JsonNode json, @NonNull Class<T> targetKind) {
         try {
-            // TODO
-            return jsonObjectMapper.readValue(json.toString(), targetKind);
-        } catch (IOException e) {
+            return jsonObjectMapper.treeToValue(json, targetKind);
+        } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
         return null;
@@ -1,18 +1,37 @@
 package io.github.de314.ac.data;
 
 import io.github.de314.ac.data.api.model.CursorPage;
+import io.github.de314.ac.data.api.kv.KeyValueSnapshot;
 import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.model.DataRow;
+import io.github.de314.ac.data.api.model.ScanFilter;
 import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.api.model.WriteBatch;
 import io.github.de314.ac.data.model.Article;
+import io.github.de314.ac.data.utils.JsonUtils;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public abstract class AbstractKeyValueStoreTest {
@@ -27,6 +46,20 @@ public abstract class AbstractKeyValueStoreTest {
 
 	abstract KeyValueStore<Article> getStore();
 
+	/**
+	 * A store that tracks versions, {@link #getStore()} unless the store only does when asked to.
+	 */
+	KeyValueStore<Article> getVersionedStore() {
+		return store;
+	}
+
+	/**
+	 * A store that takes patches, {@link #getStore()} unless the store only does when asked to.
+	 */
+	KeyValueStore<Article> getPatchableStore() {
+		return store;
+	}
+
 	@Test
 	public void exercise() {
 		assertEquals(0L, store.count());
@@ -51,6 +84,39 @@ public abstract class AbstractKeyValueStoreTest {
 		assertEquals(0L, store.count());
 	}
 
+	@Test
+	public void exerciseGetAll() {
+		for (int i = 0; i < 10; i++) {
+			Article expected = Article.builder().id(i).title("Hello, World!").build();
+			store.put(expected.getKey(), expected);
+		}
+
+		List<DataRow<Article>> rows = store.getAll(Lists.newArrayList(
+				Article.getKey(7), Article.getKey(2), Article.getKey(42), Article.getKey(5)
+		));
+
+		assertEquals(3, rows.size());
+		assertEquals(Article.getKey(7), rows.get(0).getKey());
+		assertEquals(7L, rows.get(0).getValue().getId());
+		assertEquals(Article.getKey(2), rows.get(1).getKey());
+		assertEquals(Article.getKey(5), rows.get(2).getKey());
+	}
+
+	@Test
+	public void exerciseWriteBatch() {
+		WriteBatch<Article> batch = WriteBatch.create();
+		for (int i = 0; i < 10; i++) {
+			Article expected = Article.builder().id(i).title("Hello, World!").build();
+			batch.put(expected.getKey(), expected);
+		}
+		batch.delete(Article.getKey(3));
+		store.write(batch);
+
+		assertEquals(9L, store.count());
+		assertFalse(store.get(Article.getKey(3)).isPresent());
+		assertEquals(9L, store.get(Article.getKey(9)).get().getId());
+	}
+
 	@Test
 	public void exerciseScan() {
 		assertEquals(0L, store.count());
@@ -117,4 +183,246 @@ public abstract class AbstractKeyValueStoreTest {
 		assertEquals(1000, count);
 		assertEquals(1000, observedIds.size());
 	}
+
+	@Test
+	public void exerciseReverse() {
+		for (int i = 0; i < 30; i++) {
+			Article expected = Article.builder().id(i).title("t" + i).build();
+			store.put((i < 20 ? "a" : "b") + expected.getKey(), expected);
+		}
+
+		List<String> latest = Lists.newArrayList();
+		store.stream(ScanOptions.fromPrefix("a").reverse(true).limit(3L).build())
+				.forEach(row -> latest.add(row.getKey()));
+		assertEquals(Lists.newArrayList("a00019", "a00018", "a00017"), latest);
+
+		List<Long> ids = Lists.newArrayList();
+		ScanOptions options = ScanOptions.fromRange("a00005", "b00022").reverse(true).limit(4L).build();
+		do {
+			CursorPage<Article> page = store.scan(options);
+			page.getContent().forEach(row -> ids.add(row.getValue().getId()));
+			options = page.getNext();
+		} while (options != null);
+		assertEquals(18, ids.size());
+		assertEquals(Long.valueOf(22L), ids.get(0));
+		assertEquals(Long.valueOf(5L), ids.get(ids.size() - 1));
+	}
+
+	@Test
+	public void exerciseSnapshot() {
+		for (int i = 0; i < 10; i++) {
+			store.put(Article.getKey(i), Article.builder().id(i).title("before").build());
+		}
+
+		List<Long> ids = Lists.newArrayList();
+		try (KeyValueSnapshot<Article> snapshot = store.snapshot()) {
+			store.put(Article.getKey(1), Article.builder().id(1).title("after").build());
+			store.delete(Article.getKey(2));
+			store.put(Article.getKey(20), Article.builder().id(20).title("after").build());
+
+			assertEquals("before", snapshot.get(Article.getKey(1)).get().getTitle());
+			assertTrue(snapshot.get(Article.getKey(2)).isPresent());
+			assertFalse(snapshot.get(Article.getKey(20)).isPresent());
+			assertEquals(10L, snapshot.stream(ScanOptions.all().build())
+					.filter(row -> row.getValue().getTitle().equals("before"))
+					.count());
+
+			CursorPage<Article> page = snapshot.scan(ScanOptions.all().reverse(true).limit(3L).build());
+			while (true) {
+				page.getContent().forEach(row -> ids.add(row.getValue().getId()));
+				if (page.getToken() == null) {
+					break;
+				}
+				store.delete(Article.getKey(ids.get(ids.size() - 1) - 1));
+				page = store.scan(ScanOptions.fromToken(page.getToken()).build());
+			}
+			assertEquals(Lists.newArrayList(9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L, 0L), ids);
+		}
+
+		String id = store.snapshot(Duration.ofMillis(1)).getId();
+		sleep(5);
+		assertThrows(IllegalStateException.class, () -> store.scan(ScanOptions.all().snapshot(id).build()));
+		assertEquals(7L, store.count());
+	}
+
+	@Test
+	public void exerciseSnapshotConcurrentWrites() {
+		for (int i = 0; i < 100; i++) {
+			store.put(Article.getKey(i), Article.builder().id(i).title("before").build());
+		}
+
+		try (KeyValueSnapshot<Article> snapshot = store.snapshot()) {
+			IntStream.range(0, 200).parallel().forEach(i -> {
+				if (i % 2 == 0) {
+					store.put(Article.getKey(i), Article.builder().id(i).title("after").build());
+				} else {
+					store.delete(Article.getKey(i));
+				}
+			});
+			try (Stream<DataRow<Article>> rows = snapshot.stream(ScanOptions.all().build())) {
+				assertEquals(100L, rows.filter(row -> row.getValue().getTitle().equals("before")).count());
+			}
+			assertEquals(100L, IntStream.range(0, 200).filter(i -> snapshot.get(Article.getKey(i)).isPresent()).count());
+		}
+		assertEquals(100L, store.count());
+	}
+
+	@Test
+	public void exerciseSnapshotPin() {
+		for (int i = 0; i < 10; i++) {
+			store.put(Article.getKey(i), Article.builder().id(i).title("before").build());
+		}
+
+		KeyValueSnapshot<Article> snapshot = store.snapshot(Duration.ofMillis(20));
+		try (Stream<DataRow<Article>> rows = snapshot.stream(ScanOptions.all().build())) {
+			Iterator<DataRow<Article>> it = rows.iterator();
+			assertEquals("before", it.next().getValue().getTitle());
+			for (int i = 0; i < 10; i++) {
+				store.put(Article.getKey(i), Article.builder().id(i).title("after").build());
+			}
+			sleep(50);
+			// reaps snapshots whose lease has passed, but not the one the open stream reads
+			store.snapshot().close();
+			int count = 1;
+			while (it.hasNext()) {
+				assertEquals("before", it.next().getValue().getTitle());
+				count++;
+			}
+			assertEquals(10, count);
+		}
+		sleep(50);
+		assertThrows(IllegalStateException.class, () -> snapshot.get(Article.getKey(1)));
+	}
+
+	@Test
+	public void exerciseFilter() {
+		for (int i = 0; i < 100; i++) {
+			Article expected = Article.builder()
+					.id(i)
+					.title(i % 2 == 0 ? "even" : "odd")
+					.build();
+			store.put(expected.getKey(), expected);
+		}
+
+		ScanFilter even = ScanFilter.fieldEquals("/title", "even");
+		assertEquals(50L, store.count(ScanOptions.all().filter(even).build()));
+		assertEquals(10L, store.count(ScanOptions.all().filter(even.and(ScanFilter.fieldBetween("/id", 10, 29))).build()));
+
+		ScanOptions options = ScanOptions.all()
+				.filter(ScanFilter.<Article>of(article -> article.getId() % 10 == 0))
+				.limit(3L)
+				.build();
+		List<Long> ids = Lists.newArrayList();
+		do {
+			CursorPage<Article> page = store.scan(options);
+			assertTrue(page.getContent().size() == 3 || page.getNext() == null);
+			page.getContent().forEach(row -> ids.add(row.getValue().getId()));
+			options = page.getNext();
+		} while (options != null);
+		assertEquals(10, ids.size());
+
+		assertEquals(50L, store.delete(ScanOptions.all().filter(even).build()));
+		assertEquals(50L, store.count());
+		assertEquals(0L, store.count(ScanOptions.all().filter(even).build()));
+	}
+
+	@Test
+	public void exercisePatch() {
+		JsonUtils jsonUtils = new JsonUtils();
+		KeyValueStore<Article> store = getPatchableStore();
+		store.delete(ScanOptions.all().build());
+		store.put(Article.getKey(1), Article.builder().id(1).title("draft").body("text").build());
+
+		IntStream.range(0, 20).parallel().forEach(i -> store.patch(Article.getKey(1), jsonUtils.createObject().put("title", "v" + i)));
+		store.patch(Article.getKey(1), jsonUtils.createObject().put("title", "final"));
+		Article patched = store.get(Article.getKey(1)).get();
+		assertEquals("final", patched.getTitle());
+		assertEquals("text", patched.getBody());
+		assertEquals(1L, store.stream(ScanOptions.all().build()).filter(row -> row.getValue().getTitle().equals("final")).count());
+
+		store.put(Article.getKey(1), Article.builder().id(1).title("replaced").build());
+		assertEquals("replaced", store.get(Article.getKey(1)).get().getTitle());
+	}
+
+	@Test
+	public void exerciseCounters() {
+		IntStream.range(0, 1_000).parallel().forEach(i -> store.increment("views", 2L));
+		store.increment("views", -500L);
+		assertEquals(1_500L, store.getCounter("views"));
+		assertEquals(0L, store.getCounter("missing"));
+		assertFalse(store.get("views").isPresent());
+
+		store.merge("tags", "a");
+		store.merge("tags", "b");
+		assertEquals("a,b", store.getMerged("tags").get());
+		assertFalse(store.getMerged("missing").isPresent());
+	}
+
+	@Test
+	public void exerciseVersions() {
+		KeyValueStore<Article> versioned = getVersionedStore();
+		versioned.delete(ScanOptions.all().build());
+		String key = Article.getKey(1);
+		assertTrue(versioned.putIfAbsent(key, Article.builder().id(1).title("first").build()));
+		assertFalse(versioned.putIfAbsent(key, Article.builder().id(1).title("second").build()));
+
+		DataRow<Article> first = versioned.getRow(key).get();
+		assertEquals("first", first.getValue().getTitle());
+		assertNotEquals(DataRow.NO_VERSION, first.getVersion());
+		assertEquals(first.getVersion(), versioned.stream(ScanOptions.all().build()).collect(Collectors.toList()).get(0).getVersion());
+
+		// every read-modify-write retries until no other write got in between, so no tag is lost
+		IntStream.range(0, 50).parallel().forEach(i -> {
+			while (true) {
+				DataRow<Article> row = versioned.getRow(key).get();
+				if (versioned.putIfVersion(key, row.getVersion(), row.getValue().toBuilder().tag("t" + i).build())) {
+					return;
+				}
+			}
+		});
+		DataRow<Article> latest = versioned.getRow(key).get();
+		assertEquals(50, latest.getValue().getTags().size());
+
+		assertFalse(versioned.putIfVersion(key, first.getVersion(), first.getValue()));
+		assertFalse(versioned.compareAndDelete(key, first.getVersion()));
+		assertTrue(versioned.compareAndDelete(key, latest.getVersion()));
+		assertFalse(versioned.getRow(key).isPresent());
+		assertFalse(versioned.compareAndDelete(key, DataRow.NO_VERSION));
+	}
+
+	@Test
+	public void exerciseVersionRace() throws InterruptedException {
+		KeyValueStore<Article> versioned = getVersionedStore();
+		String key = Article.getKey(2);
+		versioned.put(key, Article.builder().id(2).title("start").build());
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			for (int i = 0; i < 2_000; i++) {
+				DataRow<Article> row = versioned.getRow(key).get();
+				String plain = "plain" + i;
+				CountDownLatch start = new CountDownLatch(1);
+				Future<?> put = executor.submit(() -> {
+					start.await();
+					versioned.put(key, Article.builder().id(2).title(plain).build());
+					return null;
+				});
+				start.countDown();
+				versioned.putIfVersion(key, row.getVersion(), Article.builder().id(2).title("conditional" + i).build());
+				Futures.getUnchecked(put);
+				// the conditional write either lands before the plain put or fails, it never overwrites it
+				assertEquals(plain, versioned.get(key).get().getTitle());
+			}
+		} finally {
+			executor.shutdownNow();
+			versioned.delete(key);
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
 }
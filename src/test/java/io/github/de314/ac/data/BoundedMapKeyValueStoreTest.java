@@ -0,0 +1,150 @@
+package io.github.de314.ac.data;
+
+import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.model.KVInfo;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import io.github.de314.ac.data.memory.BoundedMapKeyValueStore;
+import io.github.de314.ac.data.memory.BoundedStoreOptions;
+import io.github.de314.ac.data.memory.EvictionPolicy;
+import io.github.de314.ac.data.model.Article;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BoundedMapKeyValueStoreTest extends AbstractKeyValueStoreTest {
+
+    @Override
+    KeyValueStore<Article> getStore() {
+        return BoundedMapKeyValueStore.create(Article.NAMESPACE, BoundedStoreOptions.maxEntries(10_000));
+    }
+
+    @Test
+    void batchesAndWrites() {
+        KeyValueStore<String> store = BoundedMapKeyValueStore.create("__test_batches", BoundedStoreOptions.maxEntries(100));
+        // batches lock the store before the eviction policy, like every other write
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> IntStream.range(0, 10_000).parallel().forEach(i -> {
+            if (i % 10 == 0) {
+                store.write(WriteBatch.<String>create().put("k" + i % 200, "b").put("k" + (i + 1) % 200, "b"));
+            } else {
+                store.put("k" + i % 200, "v");
+            }
+        }));
+        assertEquals(100L, store.count());
+    }
+
+    @Test
+    void concurrentReads() {
+        KeyValueStore<String> store = BoundedMapKeyValueStore.create("__test_reads", BoundedStoreOptions.maxEntries(100));
+        // reads are buffered and replayed to the policy while writes evict
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> IntStream.range(0, 100_000).parallel().forEach(i -> {
+            if (i % 10 == 0) {
+                store.put("k" + i / 10 % 500, "v");
+            } else {
+                store.get("k" + i % 500);
+            }
+        }));
+        assertEquals(100L, store.count());
+        KVInfo info = store.getInfo();
+        assertEquals(90_000L, info.getHitCount() + info.getMissCount());
+    }
+
+    @Test
+    void lruEviction() {
+        List<String> evicted = Lists.newArrayList();
+        BoundedStoreOptions options = BoundedStoreOptions.builder()
+                .maxEntries(3)
+                .policy(EvictionPolicy.Kind.LRU)
+                .evictionListener(notification -> evicted.add(notification.getKey()))
+                .build();
+        KeyValueStore<String> store = BoundedMapKeyValueStore.create("__test_lru", options);
+
+        store.put("a", "1");
+        store.put("b", "2");
+        store.put("c", "3");
+        store.get("a");
+        store.put("d", "4");
+
+        assertEquals(3L, store.count());
+        assertFalse(store.get("b").isPresent());
+        assertTrue(store.get("a").isPresent());
+        assertEquals(Lists.newArrayList("b"), evicted);
+
+        KVInfo info = store.getInfo();
+        assertEquals(1L, info.getEvictionCount());
+        assertEquals(2L, info.getHitCount());
+        assertEquals(1L, info.getMissCount());
+    }
+
+    @Test
+    void tinyLfuKeepsHotKeys() {
+        KeyValueStore<String> store = BoundedMapKeyValueStore.create("__test_tinylfu", BoundedStoreOptions.maxEntries(100));
+
+        for (int i = 0; i < 100; i++) {
+            store.put("hot" + i, "value");
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 100; i++) {
+                store.get("hot" + i);
+            }
+        }
+        for (int i = 0; i < 1_000; i++) {
+            store.put("scan" + i, "value");
+        }
+
+        assertEquals(100L, store.count());
+        long hot = 0;
+        for (int i = 0; i < 100; i++) {
+            if (store.get("hot" + i).isPresent()) {
+                hot++;
+            }
+        }
+        assertTrue(hot >= 95, "hot keys retained: " + hot);
+    }
+
+    @Test
+    void weightBound() {
+        KeyValueStore<String> store = BoundedMapKeyValueStore.create("__test_weight", BoundedStoreOptions.maxWeight(1_000));
+
+        for (int i = 0; i < 100; i++) {
+            store.put(String.format("k%03d", i), "0123456789");
+        }
+
+        KVInfo info = store.getInfo();
+        assertTrue(info.getMemoryUsage() <= 1_000, "weighted size: " + info.getMemoryUsage());
+        assertEquals(100L, info.getSize() + info.getEvictionCount());
+    }
+
+    @Test
+    void jsonWeight() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode().put("title", "0123456789");
+        node.putArray("tags").add("a").add(1);
+        long weight = BoundedStoreOptions.approximateBytes("k", node);
+        long json = node.toString().length();
+        assertTrue(weight >= json && weight <= 10 * json, "weight: " + weight);
+
+        KeyValueStore<Article> pojos = BoundedMapKeyValueStore.create("__test_weight_pojo", BoundedStoreOptions.maxWeight(1_000));
+        assertThrows(IllegalArgumentException.class, () -> pojos.put("a", Article.builder().id(1).build()));
+
+        KeyValueStore<Article> weighed = BoundedMapKeyValueStore.create(
+                "__test_weight_weigher",
+                BoundedStoreOptions.builder().maxWeight(1_000).weigher((key, value) -> 100).build()
+        );
+        for (int i = 0; i < 20; i++) {
+            weighed.put("k" + i, Article.builder().id(i).build());
+        }
+        KVInfo info = weighed.getInfo();
+        assertEquals(100L * info.getSize(), info.getMemoryUsage());
+        assertTrue(info.getMemoryUsage() <= 1_000, "weighted size: " + info.getMemoryUsage());
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.de314.ac.data;
+
+import io.github.de314.ac.data.api.kv.CachingKeyValueStore;
+import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.model.CacheOptions;
+import io.github.de314.ac.data.api.model.KVInfo;
+import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.memory.MapKeyValueStore;
+import io.github.de314.ac.data.model.Article;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingKeyValueStoreTest extends AbstractKeyValueStoreTest {
+
+    @Override
+    KeyValueStore<Article> getStore() {
+        return CachingKeyValueStore.create(MapKeyValueStore.create(Article.NAMESPACE), CacheOptions.defaults());
+    }
+
+    @Test
+    void invalidation() {
+        KeyValueStore<String> delegate = MapKeyValueStore.create("__test_cache");
+        KeyValueStore<String> store = CachingKeyValueStore.create(delegate, CacheOptions.defaults());
+
+        assertFalse(store.get("a").isPresent());
+        delegate.put("a", "1");
+        // the miss is cached until the key is written through the cache
+        assertFalse(store.get("a").isPresent());
+
+        store.put("a", "2");
+        assertEquals("2", store.get("a").get());
+        assertEquals("2", store.get("a").get());
+
+        store.put("b", "3");
+        assertEquals("3", store.get("b").get());
+        store.delete(ScanOptions.all().build());
+        assertFalse(store.get("a").isPresent());
+        assertFalse(store.get("b").isPresent());
+
+        KVInfo info = store.getInfo();
+        assertTrue(info.getHitCount() >= 2);
+        assertTrue(info.getMissCount() >= 3);
+    }
+
+    @Test
+    void ttl() throws InterruptedException {
+        KeyValueStore<String> store = CachingKeyValueStore.create(MapKeyValueStore.create("__test_cache_ttl"), CacheOptions.defaults());
+        store.put("a", "1", Duration.ofMillis(50));
+        assertEquals("1", store.get("a").get());
+        assertEquals("1", store.get("a").get());
+
+        Thread.sleep(100);
+        assertFalse(store.get("a").isPresent());
+        assertTrue(store.getAll(Collections.singletonList("a")).isEmpty());
+    }
+
+    @Test
+    void ttlOfDelegateWrites() throws InterruptedException {
+        KeyValueStore<String> delegate = MapKeyValueStore.create("__test_cache_ttl_delegate");
+        KeyValueStore<String> store = CachingKeyValueStore.create(delegate, CacheOptions.builder().maxEntries(10).build());
+        // keys written around the cache are cached with the expiry the delegate returns
+        for (int i = 0; i < 100; i++) {
+            delegate.put("key" + i, "v", Duration.ofMinutes(1));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("v", store.get("key" + i).get());
+        }
+        assertTrue(store.getInfo().getEvictionCount() >= 90);
+
+        delegate.put("short", "v", Duration.ofMillis(200));
+        assertEquals("v", store.get("short").get());
+        assertEquals(1, store.getAll(Collections.singletonList("short")).size());
+        Thread.sleep(300);
+        assertFalse(store.get("short").isPresent());
+        assertTrue(store.getAll(Collections.singletonList("short")).isEmpty());
+    }
+}
@@ -1,10 +1,30 @@
 package io.github.de314.ac.data;
 
+import io.github.de314.ac.data.api.kv.AdaptedKeyValueStore;
 import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.model.DataRow;
+import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import io.github.de314.ac.data.api.service.DataAdapter;
 import io.github.de314.ac.data.memory.MapKeyValueStore;
 import io.github.de314.ac.data.model.Article;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
 public class MapKeyValueStoreTest extends AbstractKeyValueStoreTest {
 
     @Override
@@ -16,4 +36,97 @@ public class MapKeyValueStoreTest extends AbstractKeyValueStoreTest {
     void test() {
 
     }
+
+    @Test
+    void lazyDecoding() {
+        AtomicInteger decoded = new AtomicInteger();
+        KeyValueStore<byte[]> raw = MapKeyValueStore.create("__test_lazy");
+        KeyValueStore<String> store = AdaptedKeyValueStore.create(raw, DataAdapter.of(
+                s -> s.getBytes(StandardCharsets.UTF_8),
+                b -> {
+                    decoded.incrementAndGet();
+                    return new String(b, StandardCharsets.UTF_8);
+                }
+        ));
+        for (int i = 0; i < 10; i++) {
+            store.put("k" + i, "v" + i);
+        }
+
+        List<DataRow<String>> rows = store.stream(ScanOptions.all().build())
+                .filter(row -> row.getKey().endsWith("7"))
+                .collect(Collectors.toList());
+        assertEquals(0, decoded.get());
+
+        assertEquals("v7", rows.get(0).getValue());
+        assertEquals("v7", rows.get(0).getValue());
+        assertEquals(1, decoded.get());
+    }
+
+    @Test
+    void ttl() throws InterruptedException {
+        MapKeyValueStore<String> store = MapKeyValueStore.create("__test_ttl");
+        for (int i = 0; i < 10; i++) {
+            if (i % 2 == 0) {
+                store.put("k" + i, "v" + i, Duration.ofMillis(50));
+            } else {
+                store.put("k" + i, "v" + i);
+            }
+        }
+        store.put("k0", "v0");
+        assertEquals("v2", store.get("k2").get());
+
+        Thread.sleep(100);
+        assertFalse(store.get("k2").isPresent());
+        assertEquals("v0", store.get("k0").get());
+        assertEquals(6L, store.stream(ScanOptions.all().build()).count());
+        assertEquals(6L, store.count(ScanOptions.all().build()));
+
+        // expired keys are removed once the tick they expired in has passed
+        Thread.sleep(MapKeyValueStore.EXPIRY_TICK_MS);
+        assertEquals(4L, store.purgeExpired());
+        assertEquals(6L, store.count());
+    }
+
+    @Test
+    void batchIsolation() throws Exception {
+        MapKeyValueStore<String> store = MapKeyValueStore.create("__test_batch");
+        List<String> keys = IntStream.range(0, 50).mapToObj(i -> String.format("k%02d", i)).collect(Collectors.toList());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int round = 0; round < 200; round++) {
+                WriteBatch<String> batch = WriteBatch.create();
+                keys.forEach(key -> batch.put(key, "batch"));
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> writer = executor.submit(() -> {
+                    start.await();
+                    keys.forEach(key -> store.put("single", key));
+                    return null;
+                });
+                start.countDown();
+                store.write(batch);
+                writer.get();
+                // versions come from one store wide sequence, so no other write took one while the batch was applied
+                List<DataRow<String>> rows = store.getAll(keys);
+                assertEquals(keys.size() - 1, rows.get(keys.size() - 1).getVersion() - rows.get(0).getVersion());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void parallelScan() {
+        KeyValueStore<String> store = MapKeyValueStore.create("__test_parallel");
+        for (int i = 0; i < 10_000; i++) {
+            store.put(String.format("k%05d", i), "v" + i);
+        }
+        ScanOptions options = ScanOptions.fromRange("k00100", "k09899").build();
+
+        assertNotNull(store.stream(options).parallel().spliterator().trySplit());
+        List<String> sequential = store.stream(options).map(DataRow::getKey).collect(Collectors.toList());
+        List<String> parallel = store.stream(options).parallel().map(DataRow::getKey).collect(Collectors.toList());
+        assertEquals(9_800, sequential.size());
+        assertEquals(sequential, parallel);
+        assertEquals(10L, store.stream(options.toBuilder().limit(10L).build()).parallel().count());
+    }
 }
@@ -1,12 +1,33 @@
 package io.github.de314.ac.data;
 
+import io.github.de314.ac.data.api.key.CompositeKey;
+import io.github.de314.ac.data.api.key.KeyCodecs;
+import io.github.de314.ac.data.api.kv.AdaptedKeyValueStore;
+import io.github.de314.ac.data.api.kv.BinaryKeyValueStore;
 import io.github.de314.ac.data.api.kv.KeyValueStore;
+import io.github.de314.ac.data.api.model.DataRow;
+import io.github.de314.ac.data.api.model.NamespaceOptions;
+import io.github.de314.ac.data.api.model.RocksTuning;
+import io.github.de314.ac.data.api.model.ScanFilter;
+import io.github.de314.ac.data.api.model.ScanOptions;
+import io.github.de314.ac.data.api.model.ValueCodec;
+import io.github.de314.ac.data.api.model.WriteBatch;
+import io.github.de314.ac.data.api.service.DataAdapter;
 import io.github.de314.ac.data.api.service.DataStoreService;
 import io.github.de314.ac.data.api.service.archive.DiskArchiveStrategy;
 import io.github.de314.ac.data.api.service.archive.LoggingArchiveStrategy;
+import io.github.de314.ac.data.disk.ColumnFamilyRole;
 import io.github.de314.ac.data.disk.RockDBDataStoreService;
+import io.github.de314.ac.data.disk.RocksDatabase;
+import io.github.de314.ac.data.disk.RocksDbService;
+import io.github.de314.ac.data.disk.RocksKeyValueStore;
+import io.github.de314.ac.data.disk.RocksMemoryPool;
 import io.github.de314.ac.data.model.Article;
 import io.github.de314.ac.data.utils.FileUtils;
+import io.github.de314.ac.data.utils.JsonUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -16,14 +37,28 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -44,15 +79,23 @@ public class RocksDBKeyValueStoreTest extends AbstractKeyValueStoreTest {
     }
 
     private static KeyValueStore<Article> store;
+    private static RocksKeyValueStore versionedStore;
+    private static RocksKeyValueStore patchStore;
 
     @BeforeAll
     public static void init() {
         store = STORE_SERVICE.getOrCreate(NAMESPACE_ARTICLE, Article.class);
+        versionedStore = RocksKeyValueStore.create(
+                NamespaceOptions.create("__test_versions").toBuilder().versioned(true).ttl(true).build()
+        );
+        patchStore = RocksKeyValueStore.create(NamespaceOptions.create("__test_patches").toBuilder().patches(true).build());
     }
 
     @AfterAll
     public static void cleanup() {
         ARCHIVE_STRATEGY.cleanup();
+        versionedStore.destroy();
+        patchStore.destroy();
         for (String namespace : NAMESPACES) {
             try {
                 STORE_SERVICE.destroy(namespace);
@@ -67,6 +110,35 @@ public class RocksDBKeyValueStoreTest extends AbstractKeyValueStoreTest {
         return store;
     }
 
+    @Override
+    KeyValueStore<Article> getVersionedStore() {
+        return AdaptedKeyValueStore.createPojoStore(versionedStore, Article.class);
+    }
+
+    @Override
+    KeyValueStore<Article> getPatchableStore() {
+        return AdaptedKeyValueStore.createPojoStore(patchStore, Article.class);
+    }
+
+    @Test
+    public void versionedTtl() throws InterruptedException {
+        versionedStore.delete(ScanOptions.all().build());
+        versionedStore.put(Article.getKey(1), new byte[] { 1 }, Duration.ofMillis(50));
+        long version = versionedStore.getRow(Article.getKey(1)).get().getVersion();
+        assertFalse(versionedStore.putIfAbsent(Article.getKey(1), new byte[] { 2 }));
+
+        Thread.sleep(100);
+        // an expired key counts as missing
+        assertFalse(versionedStore.putIfVersion(Article.getKey(1), version, new byte[] { 3 }));
+        assertTrue(versionedStore.putIfAbsent(Article.getKey(1), new byte[] { 4 }));
+        assertTrue(versionedStore.getRow(Article.getKey(1)).get().getVersion() > version);
+        assertEquals(0L, versionedStore.purgeExpired());
+        assertEquals(4, versionedStore.get(Article.getKey(1)).get()[0]);
+
+        assertThrows(UnsupportedOperationException.class, () -> store.putIfAbsent(Article.getKey(1), new Article()));
+        assertThrows(UnsupportedOperationException.class, () -> versionedStore.patch(Article.getKey(1), new JsonUtils().createObject()));
+    }
+
     @Test
     public void backup() {
         STORE_SERVICE.backup(NAMESPACE_ARTICLE, TestArchiveStrategy.of());
@@ -96,6 +168,408 @@ public class RocksDBKeyValueStoreTest extends AbstractKeyValueStoreTest {
         assertNotNull(store.get(a.getKey()));
     }
 
+    @Test
+    public void exactCount() {
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(
+                NamespaceOptions.create("__test_count").toBuilder().exactCount(true).build()
+        );
+        try {
+            byte[] value = "{}".getBytes();
+            for (int i = 0; i < 10; i++) {
+                rocksStore.put(Article.getKey(i), value);
+            }
+            rocksStore.put(Article.getKey(0), value);
+            assertEquals(10L, rocksStore.count());
+            assertEquals(10L, rocksStore.estimateCount());
+
+            assertTrue(rocksStore.delete(Article.getKey(0)));
+            assertFalse(rocksStore.delete(Article.getKey(0)));
+            assertEquals(9L, rocksStore.count());
+
+            assertEquals(4L, rocksStore.delete(ScanOptions.fromRange(Article.getKey(1), Article.getKey(4)).build()));
+            assertEquals(5L, rocksStore.count());
+            assertEquals(5L, rocksStore.count(ScanOptions.all().build()));
+        } finally {
+            rocksStore.destroy();
+        }
+    }
+
+    @Test
+    public void exactCountRangeDelete() throws Exception {
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(
+                NamespaceOptions.create("__test_count_race").toBuilder().exactCount(true).ttl(true).build()
+        );
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            byte[] value = "{}".getBytes();
+            AtomicBoolean writing = new AtomicBoolean(true);
+            List<Future<?>> writers = Lists.newArrayList();
+            for (int w = 0; w < 4; w++) {
+                writers.add(executor.submit(() -> {
+                    while (writing.get()) {
+                        rocksStore.put(Article.getKey(ThreadLocalRandom.current().nextInt(1_000)), value);
+                    }
+                }));
+            }
+            for (int i = 0; i < 50; i++) {
+                rocksStore.delete(ScanOptions.fromRange(Article.getKey(0), Article.getKey(999)).build());
+            }
+            writing.set(false);
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            assertEquals(rocksStore.count(), rocksStore.estimateCount());
+
+            rocksStore.delete(ScanOptions.all().build());
+            rocksStore.put(Article.getKey(1), value, Duration.ofMillis(1));
+            rocksStore.put(Article.getKey(2), value);
+            Thread.sleep(10);
+            // the expired key is dropped but not reported as deleted
+            assertEquals(1L, rocksStore.delete(ScanOptions.all().build()));
+            assertEquals(0L, rocksStore.estimateCount());
+        } finally {
+            executor.shutdownNow();
+            rocksStore.destroy();
+        }
+    }
+
+    @Test
+    public void valueCodecs() {
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(NamespaceOptions.create("__test_codec"));
+        try {
+            KeyValueStore<Article> jsonStore = AdaptedKeyValueStore.createPojoStore(rocksStore, Article.class);
+            KeyValueStore<Article> smileStore = AdaptedKeyValueStore.createPojoStore(rocksStore, Article.class, ValueCodec.SMILE);
+            Article a = Article.builder().id(1).title("json").build();
+            Article b = Article.builder().id(2).title("smile").build();
+
+            jsonStore.put(a.getKey(), a);
+            smileStore.put(b.getKey(), b);
+
+            assertEquals(a, smileStore.get(a.getKey()).get());
+            assertEquals(b, jsonStore.get(b.getKey()).get());
+            assertEquals(ValueCodec.JSON, ValueCodec.detect(rocksStore.get(a.getKey()).get()));
+            assertEquals(ValueCodec.SMILE, ValueCodec.detect(rocksStore.get(b.getKey()).get()));
+        } finally {
+            rocksStore.destroy();
+        }
+    }
+
+    @Test
+    public void fieldFilters() {
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(NamespaceOptions.create("__test_field_filters"));
+        try {
+            KeyValueStore<Article> jsonStore = AdaptedKeyValueStore.createPojoStore(rocksStore, Article.class);
+            KeyValueStore<Article> smileStore = AdaptedKeyValueStore.createPojoStore(rocksStore, Article.class, ValueCodec.SMILE);
+            for (int i = 0; i < 20; i++) {
+                Article article = Article.builder().id(i).title(i % 2 == 0 ? "even" : "odd").build();
+                (i < 10 ? jsonStore : smileStore).put(article.getKey(), article);
+            }
+            ScanOptions even = ScanOptions.all().filter(ScanFilter.fieldEquals("/title", "even")).build();
+            assertEquals(10L, jsonStore.count(even));
+            assertEquals(10L, AdaptedKeyValueStore.createJsonStore(rocksStore).count(even));
+
+            // rejected rows are never bound to the model
+            AtomicInteger decoded = new AtomicInteger();
+            DataAdapter<Article, byte[]> adapter = DataAdapter.pojoByteConverter(Article.class);
+            KeyValueStore<Article> countingStore = AdaptedKeyValueStore.create(rocksStore, new DataAdapter<>(
+                    adapter.getAbFunc(),
+                    value -> {
+                        decoded.incrementAndGet();
+                        return adapter.ba(value);
+                    },
+                    null,
+                    adapter.getFieldsFunc()
+            ));
+            try (Stream<DataRow<Article>> rows = countingStore.stream(even)) {
+                assertTrue(rows.allMatch(row -> row.getValue().getTitle().equals("even")));
+            }
+            assertEquals(10, decoded.get());
+
+            assertThrows(IllegalArgumentException.class, () -> rocksStore.count(even));
+            assertThrows(IllegalArgumentException.class, () -> rocksStore.scan(even));
+        } finally {
+            rocksStore.destroy();
+        }
+    }
+
+    @Test
+    public void compositeKeys() {
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(NamespaceOptions.create("__test_composite"));
+        try {
+            List<CompositeKey> keys = Lists.newArrayList(
+                    CompositeKey.of("tenant", -5L),
+                    CompositeKey.of("tenant", 3L),
+                    CompositeKey.of("tenant", 3L, Instant.ofEpochSecond(10)),
+                    CompositeKey.of("tenant", 40L),
+                    CompositeKey.of("tenant\u0000", 1L),
+                    CompositeKey.of("tenant2", 1L)
+            );
+            for (CompositeKey key : Lists.reverse(keys)) {
+                rocksStore.put(key.encode(), key.toString().getBytes());
+                assertEquals(key, CompositeKey.decode(key.encode()));
+            }
+
+            List<CompositeKey> scanned = rocksStore.stream(null, null, 100, true)
+                    .map(row -> CompositeKey.decode(row.getKey()))
+                    .collect(Collectors.toList());
+            assertEquals(keys, scanned);
+
+            byte[] prefix = CompositeKey.of("tenant", 3L).encode();
+            assertEquals(2, rocksStore.streamPrefix(prefix, 100, false).count());
+            assertEquals(4, rocksStore.streamPrefix(CompositeKey.of("tenant").encode(), 100, false).count());
+            assertEquals(2, rocksStore.delete(prefix, BinaryKeyValueStore.prefixEnd(prefix)));
+            assertFalse(rocksStore.get(prefix).isPresent());
+            assertTrue(rocksStore.get(keys.get(0).encode()).isPresent());
+        } finally {
+            rocksStore.destroy();
+        }
+    }
+
+    @Test
+    public void prefixSeek() {
+        NamespaceOptions options = NamespaceOptions.create("__test_prefix").toBuilder()
+                .tuning(RocksTuning.defaults().toBuilder().prefixLength(4).build())
+                .build();
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(options);
+        try {
+            for (String key : Lists.newArrayList("aaa", "user1", "user\u4e2d", "user\u4e2d\u6587", "usex", "v")) {
+                rocksStore.put(key, key.getBytes());
+            }
+
+            Function<ScanOptions, List<String>> keys = scan -> rocksStore.stream(scan)
+                    .map(DataRow::getKey)
+                    .collect(Collectors.toList());
+            assertEquals(Lists.newArrayList("user1", "user\u4e2d", "user\u4e2d\u6587"), keys.apply(ScanOptions.fromPrefix("user").build()));
+            assertEquals(Lists.newArrayList("user\u4e2d", "user\u4e2d\u6587"), keys.apply(ScanOptions.fromPrefix("user\u4e2d").build()));
+            assertEquals(Lists.newArrayList("user\u4e2d\u6587"), keys.apply(ScanOptions.fromPrefix("user", "user\u4e2d\u6587").build()));
+            assertEquals(Lists.newArrayList("user1", "user\u4e2d", "user\u4e2d\u6587", "usex"), keys.apply(ScanOptions.fromPrefix("us").build()));
+            assertEquals(Lists.newArrayList("aaa", "user1"), keys.apply(ScanOptions.fromRange(null, "user1").build()));
+            assertEquals(3L, rocksStore.count(ScanOptions.fromPrefix("user").build()));
+            assertEquals(2L, rocksStore.streamPrefix("user\u4e2d".getBytes(StandardCharsets.UTF_8), 10, true).count());
+        } finally {
+            rocksStore.destroy();
+        }
+    }
+
+    @Test
+    public void parallelScan() {
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(NamespaceOptions.create("__test_parallel"));
+        try {
+            for (int file = 0; file < 3; file++) {
+                for (int i = file; i < 3_000; i += 3) {
+                    rocksStore.put(String.format("k%05d", i), new byte[] { (byte) i });
+                }
+                rocksStore.flush();
+            }
+            for (int i = 3_000; i < 3_100; i++) {
+                rocksStore.put(String.format("k%05d", i), new byte[] { (byte) i });
+            }
+            ScanOptions options = ScanOptions.fromPrefix("k0").build();
+
+            try (Stream<DataRow<byte[]>> rows = rocksStore.stream(options)) {
+                assertNotNull(rows.spliterator().trySplit());
+            }
+            List<String> sequential = rocksStore.stream(options).map(DataRow::getKey).collect(Collectors.toList());
+            List<String> parallel;
+            try (Stream<DataRow<byte[]>> rows = rocksStore.stream(options)) {
+                parallel = rows.parallel().map(DataRow::getKey).collect(Collectors.toList());
+            }
+            assertEquals(3_100, sequential.size());
+            assertEquals(sequential, parallel);
+        } finally {
+            rocksStore.destroy();
+        }
+    }
+
+    @Test
+    public void closeReleasesIterators() {
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(NamespaceOptions.create("__test_close"));
+        for (int i = 0; i < 10; i++) {
+            rocksStore.put(Article.getKey(i), new byte[] { (byte) i });
+        }
+        try (Stream<DataRow<byte[]>> rows = rocksStore.stream(ScanOptions.all().build())) {
+            assertEquals(Article.getKey(0), rows.findFirst().get().getKey());
+        }
+        try (Stream<DataRow<byte[]>> rows = rocksStore.stream(ScanOptions.all().build())) {
+            rows.parallel().limit(3).forEach(row -> assertNotNull(row.getKey()));
+        }
+
+        long start = System.nanoTime();
+        rocksStore.destroy();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void ttl() throws InterruptedException {
+        RocksKeyValueStore rocksStore = RocksKeyValueStore.create(
+                NamespaceOptions.create("__test_ttl").toBuilder().ttl(true).build()
+        );
+        try {
+            for (int i = 0; i < 10; i++) {
+                if (i % 2 == 0) {
+                    rocksStore.put(Article.getKey(i), new byte[] { (byte) i }, Duration.ofMillis(50));
+                } else {
+                    rocksStore.put(Article.getKey(i), new byte[] { (byte) i });
+                }
+            }
+            assertEquals(10L, rocksStore.count());
+            assertEquals(2, rocksStore.get(Article.getKey(2)).get()[0]);
+
+            Thread.sleep(100);
+            assertFalse(rocksStore.get(Article.getKey(2)).isPresent());
+            assertEquals(3, rocksStore.get(Article.getKey(3)).get()[0]);
+            assertEquals(5L, rocksStore.count());
+            assertEquals(2L, rocksStore.count(ScanOptions.fromRange(Article.getKey(0), Article.getKey(4)).build()));
+            assertEquals(1, rocksStore.getAll(Lists.newArrayList(Article.getKey(0), Article.getKey(1))).size());
+
+            // a key written again without a ttl is not purged
+            rocksStore.put(Article.getKey(4), new byte[] { 4 });
+            assertEquals(4L, rocksStore.purgeExpired());
+            assertEquals(0L, rocksStore.purgeExpired());
+            assertEquals(6L, rocksStore.count());
+        } finally {
+            rocksStore.destroy();
+        }
+
+        assertThrows(UnsupportedOperationException.class, () -> store.put(Article.getKey(0), new Article(), Duration.ofMillis(50)));
+    }
+
+    @Test
+    public void utf8KeyOrder() {
+        String bmp = "\uFB01";
+        String supplementary = "\uD83D\uDE00";
+        assertTrue(bmp.compareTo(supplementary) > 0);
+        assertTrue(KeyCodecs.compareUtf8(bmp, supplementary) < 0);
+
+        getStore().put(supplementary, Article.builder().id(1).title("s").build());
+        getStore().put(bmp, Article.builder().id(2).title("b").build());
+        try {
+            List<String> keys = getStore().stream(ScanOptions.all().startKey(bmp).build())
+                    .map(DataRow::getKey)
+                    .collect(Collectors.toList());
+            assertEquals(Lists.newArrayList(bmp, supplementary), keys);
+        } finally {
+            getStore().delete(bmp);
+            getStore().delete(supplementary);
+        }
+    }
+
+    @Test
+    public void jsonPatch() {
+        JsonUtils jsonUtils = new JsonUtils();
+        KeyValueStore<JsonNode> docs = AdaptedKeyValueStore.createJsonStore(patchStore);
+        docs.delete(ScanOptions.all().build());
+        ObjectNode doc = jsonUtils.createObject().put("title", "draft");
+        doc.putObject("meta").put("author", "a").put("views", 0);
+        docs.put("doc", doc);
+
+        ObjectNode patch = jsonUtils.createObject();
+        patch.putObject("meta").put("views", 5);
+        docs.patch("doc", patch);
+        docs.patch("doc", jsonUtils.createObject().put("title", "published"));
+        docs.patch("new", jsonUtils.createObject().put("title", "created"));
+
+        JsonNode patched = docs.get("doc").get();
+        assertEquals("published", patched.get("title").asText());
+        assertEquals("a", patched.at("/meta/author").asText());
+        assertEquals(5, patched.at("/meta/views").asInt());
+        assertEquals("created", docs.get("new").get().get("title").asText());
+        try (Stream<DataRow<JsonNode>> rows = docs.stream(ScanOptions.all().projection(Lists.newArrayList("/meta/views")).build())) {
+            JsonNode projected = rows.findFirst().get().getValue();
+            assertEquals(5, projected.at("/meta/views").asInt());
+            assertTrue(projected.path("title").isMissingNode());
+        }
+        assertThrows(UnsupportedOperationException.class, () -> store.patch(Article.getKey(1), patch));
+    }
+
+    @Test
+    public void collapsePatches() {
+        JsonUtils jsonUtils = new JsonUtils();
+        NamespaceOptions options = NamespaceOptions.create("__test_collapse").toBuilder().patches(true).build();
+        RocksDatabase database = RocksDatabase.open(
+                options.getRocksPath(),
+                RocksDbService.createDbOptions(options.getTuning(), null),
+                name -> RocksDbService.createColumnFamilyOptions(ColumnFamilyRole.of(name), options, null)
+        );
+        // the same column family without patches reads the stored value as it is
+        RocksKeyValueStore raw = RocksKeyValueStore.create(options.toBuilder().patches(false).build(), database);
+        RocksKeyValueStore patched = RocksKeyValueStore.create(options, database);
+        try {
+            KeyValueStore<JsonNode> docs = AdaptedKeyValueStore.createJsonStore(patched);
+            docs.put("doc", jsonUtils.createObject().put("title", "draft").put("views", 0));
+            int docSize = raw.get("doc").get().length;
+            for (int i = 1; i <= 1_000; i++) {
+                docs.patch("doc", jsonUtils.createObject().put("views", i));
+            }
+            int patchSize = jsonUtils.asBytes(jsonUtils.createObject().put("views", 1_000)).length + 1;
+            assertTrue(raw.get("doc").get().length < docSize + RocksKeyValueStore.PATCH_COLLAPSE_INTERVAL * patchSize);
+
+            assertEquals(1_000, docs.get("doc").get().get("views").asInt());
+            byte[] stored = raw.get("doc").get();
+            assertFalse(new String(stored, StandardCharsets.UTF_8).contains("\n"));
+            assertEquals(1_000, jsonUtils.fromJson(stored).get("views").asInt());
+
+            // writes that skip the key locks could land between a read and its write back
+            assertThrows(UnsupportedOperationException.class, () -> RocksKeyValueStore.write(ImmutableMap.of(
+                    patched, WriteBatch.<byte[]>create().put("doc", stored)
+            )));
+            RocksKeyValueStore expiring = RocksKeyValueStore.create(
+                    NamespaceOptions.create("__test_collapse_ttl").toBuilder().ttl(true).build(), database
+            );
+            assertThrows(UnsupportedOperationException.class, () -> RocksKeyValueStore.write(ImmutableMap.of(
+                    expiring, WriteBatch.<byte[]>create().put("doc", stored)
+            )));
+            expiring.close();
+        } finally {
+            raw.close();
+            patched.close();
+            database.close();
+            FileUtils.delete(options.getPath());
+        }
+    }
+
+    @Test
+    public void sharedColumnFamilies() {
+        RockDBDataStoreService sharedService = new RockDBDataStoreService(
+                RocksMemoryPool.create(), RockDBDataStoreService.StoreMode.SHARED_COLUMN_FAMILIES
+        );
+        try {
+            KeyValueStore<Article> articles = sharedService.getOrCreate(NAMESPACE_ART_2, Article.class);
+            KeyValueStore<Article> drafts = sharedService.getOrCreate(NAMESPACE_ART_3, Article.class);
+            Article a = Article.builder().id(1).title("published").build();
+            Article b = Article.builder().id(1).title("draft").build();
+
+            sharedService.write(ImmutableMap.of(
+                    NAMESPACE_ART_2, WriteBatch.create().put(a.getKey(), a),
+                    NAMESPACE_ART_3, WriteBatch.create().put(b.getKey(), b)
+            ));
+
+            assertEquals(a, articles.get(a.getKey()).orElse(null));
+            assertEquals(b, drafts.get(b.getKey()).orElse(null));
+            assertEquals(1L, articles.count());
+
+            sharedService.destroy(NAMESPACE_ART_3);
+            drafts = sharedService.getOrCreate(NAMESPACE_ART_3, Article.class);
+            assertEquals(0L, drafts.count());
+            assertEquals(1L, articles.count());
+
+            // namespaces named like helper column families stay apart from them
+            KeyValueStore<Article> counters = sharedService.getOrCreate("counters", Article.class);
+            articles.increment("views", 3L);
+            counters.put(a.getKey(), a);
+            assertEquals(a, counters.get(a.getKey()).orElse(null));
+            assertEquals(3L, articles.getCounter("views"));
+            sharedService.destroy("counters");
+            assertEquals(3L, articles.getCounter("views"));
+            assertThrows(IllegalArgumentException.class, () -> sharedService.getOrCreate(NAMESPACE_ART_2 + "/counters"));
+        } finally {
+            sharedService.destroy(NAMESPACE_ART_2);
+            sharedService.destroy(NAMESPACE_ART_3);
+            sharedService.close();
+            FileUtils.delete(NamespaceOptions.SHARED_DATA_DIRECTORY_PATH);
+        }
+    }
+
     @Test
     public void recover() {
         Article a = Article.builder().id(1).build();
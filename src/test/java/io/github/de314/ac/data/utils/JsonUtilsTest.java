@@ -1,5 +1,6 @@
 package io.github.de314.ac.data.utils;
 
+import io.github.de314.ac.data.api.model.ValueCodec;
 import io.github.de314.ac.data.model.Article;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -68,6 +69,21 @@ public class JsonUtilsTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void applyPatch() {
+        ObjectNode doc = jsonUtils.createObject().put("id", 1);
+        doc.putObject("meta").put("a", 1).put("b", 2);
+        ObjectNode patch = jsonUtils.createObject();
+        patch.putObject("meta").put("b", 3);
+
+        JsonNode actual = jsonUtils.applyPatch(doc, patch);
+
+        assertEquals(1, actual.at("/meta/a").asInt());
+        assertEquals(3, actual.at("/meta/b").asInt());
+        assertEquals(2, doc.at("/meta/b").asInt());
+        assertEquals(patch, jsonUtils.applyPatch(null, patch));
+    }
+
     @Test
     public void asString() {
         Article expected = a(1);
@@ -104,6 +120,17 @@ public class JsonUtilsTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    void asNode() {
+        Article expected = a(1);
+        JsonNode node = jsonUtils.asNode(expected);
+
+        assertEquals("title", node.get("title").asText());
+        assertEquals(expected, jsonUtils.fromJson(node, Article.class));
+        assertSame(node, jsonUtils.asNode(node));
+        assertTrue(jsonUtils.asNode(null).isNull());
+    }
+
     @Test
     void fromJsonListString() {
         List<Article> expected = Lists.newArrayList(a(1), a(2));
@@ -121,4 +148,37 @@ public class JsonUtilsTest {
 
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    void codecs() {
+        Article expected = a(1);
+        byte[] legacy = jsonUtils.asBytes(expected);
+        assertEquals(expected, jsonUtils.decode(legacy, Article.class));
+
+        for (ValueCodec codec : ValueCodec.values()) {
+            byte[] raw = jsonUtils.encode(expected, codec);
+            assertEquals(codec, ValueCodec.detect(raw));
+            assertEquals(expected, jsonUtils.decode(raw, Article.class));
+            assertEquals(n(1), jsonUtils.decode(jsonUtils.encode(n(1), codec)));
+        }
+        assertNull(jsonUtils.decode(new byte[0], Article.class));
+    }
+
+    @Test
+    void projection() {
+        JsonNode doc = jsonUtils.fromJson("{\"id\":1,\"title\":\"t\",\"body\":\"long\",\"author\":{\"name\":\"n\",\"bio\":\"b\"},\"tags\":[\"x\",\"y\"]}");
+        List<String> projection = Lists.newArrayList("/title", "/author/name", "/tags/1");
+
+        for (ValueCodec codec : ValueCodec.values()) {
+            JsonNode actual = jsonUtils.decoderFor(JsonNode.class, projection).apply(jsonUtils.encode(doc, codec));
+            assertEquals(jsonUtils.fromJson("{\"title\":\"t\",\"author\":{\"name\":\"n\"},\"tags\":[\"y\"]}"), actual);
+        }
+
+        JsonNode none = jsonUtils.decoderFor(JsonNode.class, Lists.newArrayList("/missing")).apply(jsonUtils.asBytes(doc));
+        assertEquals(jsonUtils.createObject(), none);
+
+        Article article = jsonUtils.decoderFor(Article.class, Lists.newArrayList("/title")).apply(jsonUtils.asBytes(a(1)));
+        assertEquals("title", article.getTitle());
+        assertNull(article.getBody());
+    }
+}